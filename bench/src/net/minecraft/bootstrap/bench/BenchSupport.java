@@ -0,0 +1,63 @@
+package net.minecraft.bootstrap.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Proxy;
+import java.nio.file.Files;
+import java.util.Random;
+import net.minecraft.bootstrap.Bootstrap;
+
+/**
+ * Helpers shared by the benchmarks, every fixture is generated from a fixed seed so runs stay comparable.
+ *
+ * @author Branzel
+ */
+final class BenchSupport
+{
+    static final long SEED = 0x424d4cL;
+
+    private BenchSupport() {
+    }
+
+    static File createWorkDir(String name) throws IOException {
+        return Files.createTempDirectory(new StringBuilder().append("bml-bench-").append(name).toString()).toFile();
+    }
+
+    static Bootstrap createBootstrap(File workDir) {
+        return new Bootstrap(workDir, Proxy.NO_PROXY, null, new String[0], null, true);
+    }
+
+    /**
+     * Data that deflates to roughly half its size, like the class files and textures in the real archives.
+     */
+    static byte[] createData(Random random, int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        for (int i = 0; i < size; i += 2) {
+            data[i] = (byte) (i & 0x0f);
+        }
+        return data;
+    }
+
+    static void writeFile(File file, long size) throws IOException {
+        Random random = new Random(SEED);
+        byte[] chunk = createData(random, 1024 * 1024);
+        try (OutputStream output = new FileOutputStream(file)) {
+            for (long written = 0L; written < size; written += chunk.length) {
+                output.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,155 @@
+package net.minecraft.bootstrap.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.bootstrap.Bootstrap;
+import net.minecraft.bootstrap.Downloader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The read/digest/write loop of the Downloader against an in-process HTTP server on the loopback interface,
+ * so the network is taken out of the measurement. 64MB goes through the segmented path, 16MB through the single stream.
+ *
+ * @author Branzel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(2)
+public class DownloadBenchmark
+{
+    @Param({"16", "64"})
+    public int sizeMb;
+
+    private File workDir;
+    private File targetFile;
+    private HttpServer server;
+    private String url;
+    private String md5;
+    private Bootstrap bootstrap;
+
+    @Setup
+    public void setup() throws IOException, NoSuchAlgorithmException {
+        workDir = BenchSupport.createWorkDir("download");
+        targetFile = new File(workDir, "mods.zip.new");
+        bootstrap = BenchSupport.createBootstrap(workDir);
+
+        final byte[] content = BenchSupport.createData(new Random(BenchSupport.SEED), sizeMb * 1024 * 1024);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        md5 = hex.toString();
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new ArtifactHandler(content, md5.getBytes(StandardCharsets.US_ASCII)));
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.start();
+        url = new StringBuilder().append("http://127.0.0.1:").append(server.getAddress().getPort()).append("/mods.zip").toString();
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteTarget() {
+        targetFile.delete();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        BenchSupport.delete(workDir);
+    }
+
+    @Benchmark
+    public String download() {
+        Downloader downloader = new Downloader(new Downloader.Controller(), bootstrap, Proxy.NO_PROXY, "", targetFile, url);
+        downloader.setServerMd5(md5);
+        downloader.setExpectedSize(sizeMb * 1024L * 1024L);
+        downloader.run();
+        if (downloader.getVerifiedMd5() == null) {
+            throw new IllegalStateException("download failed");
+        }
+        return downloader.getVerifiedMd5();
+    }
+
+    /**
+     * Serves /mods.zip with HEAD and single range support, and its .hash file.
+     */
+    private static class ArtifactHandler implements HttpHandler
+    {
+        private final byte[] content;
+        private final byte[] hash;
+
+        ArtifactHandler(byte[] content, byte[] hash) {
+            this.content = content;
+            this.hash = hash;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body;
+            if ("/mods.zip".equals(path)) {
+                body = content;
+            } else if ("/mods.zip.hash".equals(path)) {
+                body = hash;
+            } else {
+                exchange.sendResponseHeaders(404, -1L);
+                exchange.close();
+                return;
+            }
+
+            int start = 0;
+            int end = body.length - 1;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if ((range != null) && (range.startsWith("bytes="))) {
+                String[] bounds = range.substring(6).split("-", 2);
+                start = Integer.parseInt(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    end = Math.min(end, Integer.parseInt(bounds[1]));
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", new StringBuilder().append("bytes ").append(start).append("-").append(end).append("/").append(body.length).toString());
+            }
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+                exchange.sendResponseHeaders(status, -1L);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(status, (end - start) + 1);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body, start, (end - start) + 1);
+            }
+        }
+    }
+}
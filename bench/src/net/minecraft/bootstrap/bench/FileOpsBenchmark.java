@@ -0,0 +1,72 @@
+package net.minecraft.bootstrap.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.bootstrap.Bootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Moving a downloaded file into place, renameNew on the same file system and the copyFile fallback.
+ *
+ * @author Branzel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(2)
+public class FileOpsBenchmark
+{
+    @Param({"64"})
+    public int sizeMb;
+
+    private File workDir;
+    private File source;
+    private File packedFile;
+    private File packedFileNew;
+    private Bootstrap bootstrap;
+
+    @Setup
+    public void setup() throws IOException {
+        workDir = BenchSupport.createWorkDir("fileops");
+        source = new File(workDir, "source.bin");
+        packedFile = new File(workDir, "mods.zip");
+        packedFileNew = new File(workDir, "mods.zip.new");
+        BenchSupport.writeFile(source, sizeMb * 1024L * 1024L);
+        bootstrap = BenchSupport.createBootstrap(workDir);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareNew() throws IOException {
+        Bootstrap.copyFile(source, packedFileNew);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchSupport.delete(workDir);
+    }
+
+    @Benchmark
+    public void copyFile() throws IOException {
+        Bootstrap.copyFile(packedFileNew, packedFile);
+    }
+
+    @Benchmark
+    public void renameNew() {
+        bootstrap.renameNew(packedFile, packedFileNew);
+    }
+}
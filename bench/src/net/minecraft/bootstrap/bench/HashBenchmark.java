@@ -0,0 +1,63 @@
+package net.minecraft.bootstrap.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.bootstrap.Bootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashing of a large packed file, both the full read and the lookup through the hash index.
+ *
+ * @author Branzel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(2)
+public class HashBenchmark
+{
+    @Param({"64", "512"})
+    public int sizeMb;
+
+    private File workDir;
+    private File file;
+    private Bootstrap bootstrap;
+
+    @Setup
+    public void setup() throws IOException {
+        workDir = BenchSupport.createWorkDir("hash");
+        file = new File(workDir, "mods.zip");
+        BenchSupport.writeFile(file, sizeMb * 1024L * 1024L);
+        bootstrap = BenchSupport.createBootstrap(workDir);
+        bootstrap.getMd5(file);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchSupport.delete(workDir);
+    }
+
+    @Benchmark
+    public String computeMd5() {
+        return Bootstrap.computeMd5(file);
+    }
+
+    @Benchmark
+    public String indexedMd5() {
+        return bootstrap.getMd5(file);
+    }
+}
@@ -0,0 +1,71 @@
+package net.minecraft.bootstrap.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.bootstrap.Bootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LZMA + Pack200 unpacking of the launcher. There is no way to produce a pack200 file from a fixed seed,
+ * so the packed launcher has to be passed with -Dbench.launcherPack.
+ * With upToDate=true only the check that skips an unchanged launcher is measured.
+ *
+ * @author Branzel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(2)
+public class UnpackBenchmark
+{
+    @Param({"false", "true"})
+    public boolean upToDate;
+
+    private File workDir;
+    private Bootstrap bootstrap;
+
+    @Setup
+    public void setup() throws IOException {
+        String path = System.getProperty("bench.launcherPack", "");
+        File fixture = new File(path);
+        if ((path.isEmpty()) || (!fixture.isFile())) {
+            throw new IllegalStateException("set -Dbench.launcherPack to a launcher.pack.lzma file");
+        }
+        workDir = BenchSupport.createWorkDir("unpack");
+        Bootstrap.copyFile(fixture, new File(workDir, "launcher.pack.lzma"));
+        bootstrap = BenchSupport.createBootstrap(workDir);
+        bootstrap.unpack();
+    }
+
+    @Setup(Level.Invocation)
+    public void forgetSource() {
+        if (!upToDate) {
+            new File(workDir, "launcher.jar.source").delete();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchSupport.delete(workDir);
+    }
+
+    @Benchmark
+    public void unpack() {
+        bootstrap.unpack();
+    }
+}
@@ -0,0 +1,101 @@
+package net.minecraft.bootstrap.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import net.minecraft.bootstrap.Bootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full extraction of an archive into an empty folder.
+ * "small" mimics config.zip (thousands of tiny deflated files), "large" mimics mods.zip and libraries.zip
+ * (a few big entries, half of them stored).
+ *
+ * @author Branzel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(2)
+public class UnzipBenchmark
+{
+    @Param({"small", "large"})
+    public String layout;
+
+    private File workDir;
+    private File packedFile;
+    private File outputDir;
+    private Bootstrap bootstrap;
+
+    @Setup
+    public void setup() throws IOException {
+        workDir = BenchSupport.createWorkDir("unzip");
+        packedFile = new File(workDir, "mods.zip");
+        outputDir = new File(workDir, "mods");
+        bootstrap = BenchSupport.createBootstrap(workDir);
+
+        Random random = new Random(BenchSupport.SEED);
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(packedFile))) {
+            if ("small".equals(layout)) {
+                for (int i = 0; i < 5000; i++) {
+                    byte[] data = BenchSupport.createData(random, 512 + random.nextInt(8192));
+                    putEntry(output, new StringBuilder().append("config/").append(i % 50).append("/file").append(i).append(".cfg").toString(), data, false);
+                }
+            } else {
+                for (int i = 0; i < 6; i++) {
+                    byte[] data = BenchSupport.createData(random, 32 * 1024 * 1024);
+                    putEntry(output, new StringBuilder().append("mods/mod").append(i).append(".jar").toString(), data, (i % 2) == 0);
+                }
+            }
+        }
+    }
+
+    private static void putEntry(ZipOutputStream output, String name, byte[] data, boolean stored) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        output.putNextEntry(entry);
+        output.write(data);
+        output.closeEntry();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearOutput() {
+        BenchSupport.delete(outputDir);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchSupport.delete(workDir);
+    }
+
+    @Benchmark
+    public void unzip() {
+        bootstrap.unzip(packedFile, outputDir);
+    }
+}
@@ -0,0 +1,138 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One file the bootstrap keeps up to date, with the folder its contents get
+ * extracted to. The archives carry that folder as a prefix, so they are
+ * always extracted into the working directory itself. The launcher is the
+ * artifact named launcher.*, it gets decoded into launcher.jar instead.
+ * Deferred artifacts aren't needed by the launcher window, they are updated
+ * in the background once it is up, see BackgroundUpdates.
+ *
+ * @author Branzel
+ */
+public class Artifact
+{
+    private final String name;
+    private final String url;
+    private final File packedFile;
+    private final File packedFileNew;
+    private final File folder;
+    private final String md5;
+    private final long size;
+    private final int priority;
+    private final List<String> mirrors;
+    private final String codec;
+    private final boolean deferred;
+
+    public Artifact(String name, String url, File packedFile, File packedFileNew, File folder, String md5, long size, int priority) {
+        this(name, url, packedFile, packedFileNew, folder, md5, size, priority, Collections.<String>emptyList(), null);
+    }
+
+    public Artifact(String name, String url, File packedFile, File packedFileNew, File folder, String md5, long size, int priority, List<String> mirrors, String codec) {
+        this(name, url, packedFile, packedFileNew, folder, md5, size, priority, mirrors, codec, false);
+    }
+
+    public Artifact(String name, String url, File packedFile, File packedFileNew, File folder, String md5, long size, int priority, List<String> mirrors, String codec, boolean deferred) {
+        this.name = name;
+        this.url = url;
+        this.packedFile = packedFile;
+        this.packedFileNew = packedFileNew;
+        this.folder = folder;
+        this.md5 = md5;
+        this.size = size;
+        this.priority = priority;
+        this.mirrors = mirrors;
+        this.codec = codec;
+        this.deferred = deferred;
+    }
+
+    public static Artifact create(File workDir, String name, String url, String md5, long size, int priority, String target) {
+        return create(workDir, name, url, md5, size, priority, target, Collections.<String>emptyList(), null);
+    }
+
+    public static Artifact create(File workDir, String name, String url, String md5, long size, int priority, String target, List<String> mirrors, String codec) {
+        return create(workDir, name, url, md5, size, priority, target, mirrors, codec, false);
+    }
+
+    public static Artifact create(File workDir, String name, String url, String md5, long size, int priority, String target, List<String> mirrors, String codec, boolean deferred) {
+        String folder = Bootstrap.stringHasValue(target) ? target : getDefaultFolder(name);
+        return new Artifact(name, url, new File(workDir, name), new File(workDir, name + ".new"), new File(workDir, folder), md5, size, priority, mirrors, codec, deferred);
+    }
+
+    public static String getDefaultFolder(String name) {
+        int dot = name.indexOf(".");
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public File getPackedFile() {
+        return packedFile;
+    }
+
+    public File getPackedFileNew() {
+        return packedFileNew;
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    /**
+     * @return the md5 published by the update manifest, or null when it has to be asked from the server
+     */
+    public String getMd5() {
+        return md5;
+    }
+
+    /**
+     * @return the size published by the update manifest, or -1 when unknown
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return other urls serving the same file, besides getUrl()
+     */
+    public List<String> getMirrors() {
+        return mirrors;
+    }
+
+    public boolean isLauncher() {
+        return name.startsWith("launcher.");
+    }
+
+    /**
+     * @return true when the launcher may start before this artifact is up to date, never for the launcher itself
+     */
+    public boolean isDeferred() {
+        return (deferred) && (!isLauncher());
+    }
+
+    /**
+     * @return the codec named by the update manifest, or the one matching the file name
+     */
+    public ArtifactCodec getCodec() {
+        return ArtifactCodec.forArtifact(name, codec);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
\ No newline at end of file
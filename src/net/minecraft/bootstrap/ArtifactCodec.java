@@ -0,0 +1,234 @@
+package net.minecraft.bootstrap;
+
+import LZMA.LzmaInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Turns a downloaded launcher artifact back into a jar. The codec is named by the update manifest
+ * or follows from the file name:
+ * <pre>
+ * launcher.jar       plain jar, nothing to decode
+ * launcher.jar.gz    gzip
+ * launcher.jar.zst   zstd, needs zstd-jni on the class path
+ * launcher.pack.lzma LZMA + Pack200, needs a JDK older than 14
+ * </pre>
+ * Decoders that aren't built into the JDK are looked up by reflection, so a missing one only
+ * makes its codec unavailable.
+ *
+ * @author Branzel
+ */
+public abstract class ArtifactCodec
+{
+    private static final int BUFFER_SIZE = 262144;
+    public static final ArtifactCodec PLAIN = new Plain();
+    public static final ArtifactCodec GZIP = new Gzip();
+    public static final ArtifactCodec ZSTD = new Zstd();
+    public static final ArtifactCodec LEGACY = new Legacy();
+    private static final List<ArtifactCodec> CODECS = Arrays.asList(new ArtifactCodec[] { ZSTD, GZIP, LEGACY, PLAIN });
+
+    private final String name;
+    private final String extension;
+
+    protected ArtifactCodec(String name, String extension) {
+        this.name = name;
+        this.extension = extension;
+    }
+
+    /**
+     * @param declared codec named by the update manifest, may be null
+     * @return the codec for the artifact, plain when nothing matches
+     */
+    public static ArtifactCodec forArtifact(String fileName, String declared) {
+        if (Bootstrap.stringHasValue(declared)) {
+            for (ArtifactCodec codec : CODECS) {
+                if (codec.name.equalsIgnoreCase(declared)) {
+                    return codec;
+                }
+            }
+        }
+        for (ArtifactCodec codec : CODECS) {
+            if (fileName.endsWith(codec.extension)) {
+                return codec;
+            }
+        }
+        return PLAIN;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return false when this JVM lacks what the codec needs
+     */
+    public abstract boolean isAvailable();
+
+    /**
+     * Decodes packedFile into the jar outputFile.
+     */
+    public void decode(File packedFile, File outputFile) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(outputFile), 65536)) {
+            decode(packedFile, outputStream);
+        }
+    }
+
+    /**
+     * Decodes packedFile and writes the jar to outputStream, which is left open.
+     */
+    public abstract void decode(File packedFile, OutputStream outputStream) throws IOException;
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) >= 0) {
+            outputStream.write(buffer, 0, read);
+        }
+    }
+
+    private static class Plain extends ArtifactCodec
+    {
+        Plain() {
+            super("jar", ".jar");
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public void decode(File packedFile, File outputFile) throws IOException {
+            if (!packedFile.equals(outputFile)) {
+                Bootstrap.copyFile(packedFile, outputFile);
+            }
+        }
+
+        @Override
+        public void decode(File packedFile, OutputStream outputStream) throws IOException {
+            try (InputStream inputStream = new FileInputStream(packedFile)) {
+                copy(inputStream, outputStream);
+            }
+        }
+    }
+
+    private static class Gzip extends ArtifactCodec
+    {
+        Gzip() {
+            super("gzip", ".jar.gz");
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public void decode(File packedFile, OutputStream outputStream) throws IOException {
+            try (InputStream inputStream = new GZIPInputStream(new FileInputStream(packedFile), BUFFER_SIZE)) {
+                copy(inputStream, outputStream);
+            }
+        }
+    }
+
+    private static class Zstd extends ArtifactCodec
+    {
+        private static final String STREAM_CLASS = "com.github.luben.zstd.ZstdInputStream";
+        private static final String NATIVE_CLASS = "com.github.luben.zstd.util.Native";
+        private Boolean available;
+
+        Zstd() {
+            super("zstd", ".jar.zst");
+        }
+
+        @Override
+        public synchronized boolean isAvailable() {
+            if (available == null) {
+                try {
+                    // Loading the class is not enough, the native library has to exist for this platform
+                    Class.forName(NATIVE_CLASS).getMethod("load").invoke(null);
+                    Class.forName(STREAM_CLASS);
+                    available = Boolean.TRUE;
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    available = Boolean.FALSE;
+                }
+            }
+            return available.booleanValue();
+        }
+
+        @Override
+        public void decode(File packedFile, OutputStream outputStream) throws IOException {
+            InputStream inputStream;
+            try {
+                inputStream = (InputStream) Class.forName(STREAM_CLASS).getConstructor(InputStream.class).newInstance(new BufferedInputStream(new FileInputStream(packedFile), BUFFER_SIZE));
+            } catch (InvocationTargetException e) {
+                throw new IOException("Unable to start zstd: " + e.getCause(), e.getCause());
+            } catch (ReflectiveOperationException | LinkageError e) {
+                throw new IOException("zstd is not available: " + e, e);
+            }
+            try (InputStream zstdInputStream = inputStream) {
+                copy(zstdInputStream, outputStream);
+            }
+        }
+    }
+
+    private static class Legacy extends ArtifactCodec
+    {
+        Legacy() {
+            super("lzma-pack200", ".pack.lzma");
+        }
+
+        @Override
+        public boolean isAvailable() {
+            try {
+                Class.forName("java.util.jar.Pack200");
+                return true;
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void decode(File packedFile, OutputStream outputStream) throws IOException {
+            Method unpack;
+            Object unpacker;
+            try {
+                // Pack200 was removed in Java 14, reflection keeps this class loadable there
+                unpacker = Class.forName("java.util.jar.Pack200").getMethod("newUnpacker").invoke(null);
+                unpack = Class.forName("java.util.jar.Pack200$Unpacker").getMethod("unpack", InputStream.class, JarOutputStream.class);
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Pack200 is not available on Java " + System.getProperty("java.version"), e);
+            }
+
+            try (InputStream inputHandle = new LzmaInputStream(new BufferedInputStream(new FileInputStream(packedFile), 65536))) {
+                JarOutputStream jarOutputStream = new JarOutputStream(outputStream);
+                // LZMA output goes straight into Pack200, no intermediate file
+                unpack.invoke(unpacker, inputHandle, jarOutputStream);
+                // Writes the central directory, closing would close outputStream too
+                jarOutputStream.finish();
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(String.valueOf(cause), cause);
+            } catch (IllegalAccessException e) {
+                throw new IOException(e.toString(), e);
+            }
+        }
+    }
+}
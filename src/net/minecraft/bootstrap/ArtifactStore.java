@@ -0,0 +1,190 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A content addressed store shared between working directories. Files are
+ * kept under their md5 and handed out as hardlinks, or as copies where the
+ * filesystem can't link. The least recently used files are evicted once
+ * the store grows past its size cap. Use is recorded on an empty
+ * {@code <hash>.access} file next to each stored file, because the stored
+ * file shares its inode, and so its timestamp, with the linked copies.
+ *
+ * Everything handed out by the store may be shared with other working
+ * directories, so callers must replace such files instead of writing into
+ * them.
+ *
+ * @author Branzel
+ */
+public class ArtifactStore
+{
+    private static final String ACCESS_SUFFIX = ".access";
+    private final File root;
+    private final long maxSize;
+
+    public ArtifactStore(File root, long maxSize) {
+        this.root = root;
+        this.maxSize = maxSize;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    public boolean contains(String hash) {
+        return getFile(hash).isFile();
+    }
+
+    /**
+     * Places the stored file with the given hash at target.
+     *
+     * @return false when the store doesn't have the file
+     */
+    public boolean linkTo(String hash, File target) throws IOException {
+        File stored = getFile(hash);
+        if (!stored.isFile()) {
+            return false;
+        }
+        touch(stored);
+
+        Files.deleteIfExists(target.toPath());
+        try {
+            Files.createLink(target.toPath(), stored.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(stored.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a verified file to the store, keeping the file itself where it is. The source becomes
+     * shared with the store when it can be hardlinked.
+     */
+    public void put(File source, String hash) throws IOException {
+        File stored = getFile(hash);
+        if (stored.isFile()) {
+            touch(stored);
+            return;
+        }
+
+        File temp = createTempFile();
+        try {
+            temp.delete();
+            try {
+                Files.createLink(temp.toPath(), source.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            add(temp, hash);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Moves a file created with {@link #createTempFile()} into the store.
+     */
+    public void add(File temp, String hash) throws IOException {
+        File stored = getFile(hash);
+        if (stored.isFile()) {
+            touch(stored);
+            temp.delete();
+            return;
+        }
+
+        stored.getParentFile().mkdirs();
+        try {
+            Files.move(temp.toPath(), stored.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Another working directory stored the same file first
+            temp.delete();
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), stored.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        touch(stored);
+    }
+
+    public File createTempFile() throws IOException {
+        File temp = new File(root, "tmp");
+        temp.mkdirs();
+        return File.createTempFile("store", ".tmp", temp);
+    }
+
+    /**
+     * Evicts the least recently used files until the store fits its size cap.
+     */
+    public synchronized void trim() {
+        List<File> files = new ArrayList<>();
+        final Map<File, Long> lastUsed = new HashMap<>();
+        long size = 0L;
+        File[] buckets = root.listFiles();
+        if (buckets == null) {
+            return;
+        }
+        for (File bucket : buckets) {
+            File[] stored = bucket.getName().length() == 2 ? bucket.listFiles() : null;
+            if (stored == null) {
+                continue;
+            }
+            for (File file : stored) {
+                if (file.getName().endsWith(ACCESS_SUFFIX)) {
+                    continue;
+                }
+                File access = getAccessFile(file);
+                files.add(file);
+                lastUsed.put(file, Long.valueOf(access.isFile() ? access.lastModified() : file.lastModified()));
+                size += file.length();
+            }
+        }
+        if (size <= maxSize) {
+            return;
+        }
+
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return lastUsed.get(a).compareTo(lastUsed.get(b));
+            }
+        });
+        for (File file : files) {
+            if (size <= maxSize) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                getAccessFile(file).delete();
+                size -= length;
+            }
+        }
+    }
+
+    private void touch(File stored) {
+        File access = getAccessFile(stored);
+        try {
+            access.createNewFile();
+        } catch (IOException e) {
+            return;
+        }
+        access.setLastModified(System.currentTimeMillis());
+    }
+
+    private File getAccessFile(File stored) {
+        return new File(stored.getPath() + ACCESS_SUFFIX);
+    }
+
+    private File getFile(String hash) {
+        String name = hash.toLowerCase();
+        return new File(new File(root, name.substring(0, 2)), name);
+    }
+}
\ No newline at end of file
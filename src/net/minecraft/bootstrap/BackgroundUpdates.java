@@ -0,0 +1,117 @@
+package net.minecraft.bootstrap;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The deferred artifacts still being updated after the launcher started. The launcher is loaded
+ * by a child class loader of the bootstrap, so it can ask here right before it starts the game:
+ * <pre>
+ * if (!BackgroundUpdates.await(5L, TimeUnit.MINUTES)) {
+ *     // still downloading, see getPending()
+ * }
+ * </pre>
+ * Only the JVM of the bootstrap is covered. With --cds or --headless nothing is deferred.
+ *
+ * @author Branzel
+ */
+public final class BackgroundUpdates
+{
+    private static final Map<String, Future<?>> updates = new LinkedHashMap<>();
+
+    public enum Status
+    {
+        PENDING, DONE, FAILED
+    }
+
+    private BackgroundUpdates() {
+    }
+
+    static synchronized void add(String name, Future<?> update) {
+        updates.put(name, update);
+    }
+
+    private static synchronized List<Future<?>> getUpdates() {
+        return new ArrayList<>(updates.values());
+    }
+
+    /**
+     * @return the status of the named artifact, DONE when it wasn't updated in the background
+     */
+    public static Status getStatus(String name) {
+        Future<?> update;
+        synchronized (BackgroundUpdates.class) {
+            update = updates.get(name);
+        }
+        return update == null ? Status.DONE : getStatus(update);
+    }
+
+    private static Status getStatus(Future<?> update) {
+        if (!update.isDone()) {
+            return Status.PENDING;
+        }
+        try {
+            update.get();
+            return Status.DONE;
+        } catch (ExecutionException | CancellationException | InterruptedException e) {
+            return Status.FAILED;
+        }
+    }
+
+    /**
+     * @return every artifact updated in the background with its status
+     */
+    public static synchronized Map<String, Status> getStatus() {
+        Map<String, Status> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<?>> entry : updates.entrySet()) {
+            result.put(entry.getKey(), getStatus(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * @return the artifacts still being updated
+     */
+    public static List<String> getPending() {
+        List<String> pending = new ArrayList<>();
+        for (Map.Entry<String, Status> entry : getStatus().entrySet()) {
+            if (entry.getValue() == Status.PENDING) {
+                pending.add(entry.getKey());
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @return true when no artifact is being updated anymore, failed ones included
+     */
+    public static boolean isDone() {
+        return getPending().isEmpty();
+    }
+
+    /**
+     * Waits for the background updates to end. A failed update is retried on the next start.
+     *
+     * @return false when some are still running after the timeout
+     */
+    public static boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Future<?> update : getUpdates()) {
+            try {
+                update.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | CancellationException e) {
+                // Reported by getStatus
+            } catch (TimeoutException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,7 +1,8 @@
 package net.minecraft.bootstrap;
 
-import LZMA.LzmaInputStream;
-import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
@@ -9,50 +10,61 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.math.BigInteger;
 import java.net.Authenticator;
+import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.PasswordAuthentication;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.security.DigestInputStream;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Pack200;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import javax.swing.JFrame;
-import javax.swing.JScrollBar;
-import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
-import javax.swing.SwingUtilities;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.DefaultCaret;
-import javax.swing.text.Document;
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import net.minecraft.hopper.HopperService;
 
-public final class Bootstrap extends JFrame
+public final class Bootstrap
 {
-    private static final Font MONOSPACED = new Font("Monospaced", 0, 12);
     public static final String LAUNCHER_URL = "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/launcher.jar";
+    private static final int MAX_UPDATE_THREADS = 4;
+    private static final long UPDATE_CHECK_TIMEOUT = 3L;
+    private static final String LOCK_FILE = "bootstrap.lock";
+    private static final String PREFETCH_LOCK_FILE = "prefetch.lock";
+    public static final String MANIFEST_URL = "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/manifest.json";
     private final File workDir;
     private final Proxy proxy;
     private final File launcherJar;
@@ -66,18 +78,43 @@ public final class Bootstrap extends JFrame
     private final File packedResourcepacksZipNew;
     private final File packedLibrariesZip;
     private final File packedLibrariesZipNew;
-    private final JTextArea textArea;
-    private final JScrollPane scrollPane;
+    private final BootstrapFrame frame;
     private final PasswordAuthentication proxyAuth;
     private final String[] remainderArgs;
-    private final StringBuilder outputBuffer = new StringBuilder();
+    private final ArtifactStore artifactStore;
+    private final LogSink logSink;
+    private final HashIndex hashIndex;
+    private final StartupTrace trace;
+    private final MirrorStats mirrorStats;
+    private final Trash trash;
+    private final List<Thread> lingeringDownloads = new ArrayList<>();
+    private long hedgeDelay = 2000L;
+    private CdsLauncher cdsLauncher;
+    private String mirrorUrl;
+    private boolean inMemory;
+    private volatile ByteBuffer launcherImage;
 
     public Bootstrap(File workDir, Proxy proxy, PasswordAuthentication proxyAuth, String[] remainderArgs) {
-        super("Minecraft Launcher");
+        this(workDir, proxy, proxyAuth, remainderArgs, null);
+    }
+
+    public Bootstrap(File workDir, Proxy proxy, PasswordAuthentication proxyAuth, String[] remainderArgs, ArtifactStore artifactStore) {
+        this(workDir, proxy, proxyAuth, remainderArgs, artifactStore, false);
+    }
+
+    /**
+     * @param headless when true no window is created and no AWT class is loaded, output only goes to the console
+     */
+    public Bootstrap(File workDir, Proxy proxy, PasswordAuthentication proxyAuth, String[] remainderArgs, ArtifactStore artifactStore, boolean headless) {
         this.workDir = workDir;
         this.proxy = proxy;
         this.proxyAuth = proxyAuth;
         this.remainderArgs = remainderArgs;
+        this.artifactStore = artifactStore;
+        hashIndex = new HashIndex(new File(workDir, "hashes.idx"));
+        trace = new StartupTrace(new File(workDir, StartupTrace.FILE_NAME));
+        mirrorStats = new MirrorStats(new File(workDir, "mirrors.stats"));
+        trash = new Trash(this, new File(workDir, ".trash"));
         launcherJar = new File(workDir, "launcher.jar");
         packedLauncherJar = new File(workDir, "launcher.pack.lzma");
         packedLauncherJarNew = new File(workDir, "launcher.pack.lzma.new");
@@ -90,22 +127,8 @@ public final class Bootstrap extends JFrame
         packedModsZip = new File(workDir, "mods.zip");
         packedModsZipNew = new File(workDir, "mods.zip.new");
 
-        setSize(854, 480);
-        setDefaultCloseOperation(3);
-
-        textArea = new JTextArea();
-        textArea.setLineWrap(true);
-        textArea.setEditable(false);
-        textArea.setFont(MONOSPACED);
-        ((DefaultCaret)textArea.getCaret()).setUpdatePolicy(1);
-
-        scrollPane = new JScrollPane(textArea);
-        scrollPane.setBorder(null);
-        scrollPane.setVerticalScrollBarPolicy(22);
-
-        add(scrollPane);
-        setLocationRelativeTo(null);
-        setVisible(true);
+        frame = headless ? null : new BootstrapFrame();
+        logSink = new LogSink(System.out, frame);
 
         println("Bootstrap (v5)");
         println(new StringBuilder().append("Current time is ").append(DateFormat.getDateTimeInstance(2, 2, Locale.US).format(new Date())).toString());
@@ -116,100 +139,748 @@ public final class Bootstrap extends JFrame
         println(new StringBuilder().append("System.getProperty('java.vendor') == '").append(System.getProperty("java.vendor")).append("'").toString());
         println(new StringBuilder().append("System.getProperty('sun.arch.data.model') == '").append(System.getProperty("sun.arch.data.model")).append("'").toString());
         println("");
+
+        // Left over by a run that exited before it was emptied
+        trash.empty();
     }
 
     public void execute(boolean force) {
-        checkUpdate(force, packedLauncherJar, packedLauncherJarNew, "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/launcher.pack.lzma");
-        checkUpdate(force, packedModsZip, packedModsZipNew, "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/mods.zip");
-        checkUpdate(force, packedConfigZip, packedConfigZipNew, "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/config.zip");
-        checkUpdate(force, packedLibrariesZip, packedLibrariesZipNew, "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/libraries.zip");
-        checkUpdate(force, packedResourcepacksZip, packedResourcepacksZipNew, "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/resourcepacks.zip");
-
+        // A launcher in another JVM or no launcher at all can't wait for deferred artifacts itself
+        update(force, (frame != null) && (cdsLauncher == null));
         startLauncher(launcherJar);
     }
 
-    public void unpack() {
-        File lzmaUnpacked = getUnpackedLzmaFile(packedLauncherJar);
-        InputStream inputHandle = null;
-        OutputStream outputHandle = null;
+    /**
+     * Brings every artifact up to date without starting the launcher.
+     *
+     * @return the artifacts that were checked
+     */
+    public List<Artifact> update(boolean force) {
+        return update(force, false);
+    }
 
-        println(new StringBuilder().append("Reversing LZMA on ").append(packedLauncherJar).append(" to ").append(lzmaUnpacked).toString());
-        try
-        {
-          inputHandle = new LzmaInputStream(new FileInputStream(packedLauncherJar));
-          outputHandle = new FileOutputStream(lzmaUnpacked);
-
-          byte[] buffer = new byte[65536];
-
-          int read = inputHandle.read(buffer);
-          while (read >= 1) {
-            outputHandle.write(buffer, 0, read);
-            read = inputHandle.read(buffer);
-          }
-        } catch (Exception e) {
-          throw new FatalBootstrapError(new StringBuilder().append("Unable to un-lzma: ").append(e).toString());
+    /**
+     * Brings the artifacts up to date without starting the launcher.
+     *
+     * @param background when true deferred artifacts are left updating in the background and
+     *                   this returns once the others are done, see BackgroundUpdates
+     * @return the artifacts that were checked
+     */
+    public List<Artifact> update(boolean force, boolean background) {
+        // Taken before anything else, so waiting for another bootstrap doesn't eat into the checks
+        WorkDirLock lock = lockWorkDir();
+        List<Artifact> artifacts;
+        ExecutorService executor = null;
+        List<Artifact> deferred = new ArrayList<>();
+        List<Future<?>> deferredUpdates = new ArrayList<>();
+        try {
+            artifacts = selectLauncher(getArtifacts());
+            preconnect(artifacts);
+            // A thread per artifact, so no check waits in the queue behind another artifact's download
+            executor = Executors.newFixedThreadPool(Math.max(MAX_UPDATE_THREADS, artifacts.size()), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Updater #" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            // One deadline for all checks, a start waits for the slowest check rather than their sum
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(UPDATE_CHECK_TIMEOUT);
+            List<Future<?>> updates = new ArrayList<>();
+            for (Artifact artifact : artifacts) {
+                if ((background) && (artifact.isDeferred())) {
+                    deferred.add(artifact);
+                } else {
+                    updates.add(submitUpdate(executor, force, artifact, deadline, false));
+                }
+            }
+
+            for (Future<?> update : updates) {
+                awaitUpdate(update);
+            }
+
+            // Only started now, so they don't take bandwidth from what the launcher needs
+            long deferredDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(UPDATE_CHECK_TIMEOUT);
+            for (Artifact artifact : deferred) {
+                Future<?> update = submitUpdate(executor, force, artifact, deferredDeadline, true);
+                BackgroundUpdates.add(artifact.getName(), update);
+                deferredUpdates.add(update);
+            }
+
+            if ((artifactStore != null) && (deferred.isEmpty())) {
+                artifactStore.trim();
+            }
         } finally {
-          closeSilently(inputHandle);
-          closeSilently(outputHandle);
+            if (executor != null) {
+                executor.shutdown();
+            }
+            mirrorStats.save();
+            if (deferredUpdates.isEmpty()) {
+                unlockAfterDownloads(lock);
+            }
+        }
+        if (!deferred.isEmpty()) {
+            println(new StringBuilder().append("Updating ").append(deferred).append(" in the background").toString());
+            finishInBackground(deferred, deferredUpdates, lock);
         }
+        return artifacts;
+    }
 
-        println(new StringBuilder().append("Unpacking ").append(lzmaUnpacked).append(" to ").append(launcherJar).toString());
+    /**
+     * Waits for other bootstraps and prefetches to be done moving artifacts in this working directory.
+     *
+     * @return null when the working directory can't be locked, updating goes on without
+     */
+    private WorkDirLock lockWorkDir() {
+        File lockFile = new File(workDir, LOCK_FILE);
+        try {
+            WorkDirLock lock = WorkDirLock.tryAcquire(lockFile);
+            if (lock == null) {
+                println("Waiting for another bootstrap using " + workDir.toString());
+                lock = WorkDirLock.acquire(lockFile);
+            }
+            return lock;
+        } catch (IOException | OverlappingFileLockException e) {
+            println(new StringBuilder().append("Unable to lock ").append(lockFile).append(": ").append(e).toString());
+            return null;
+        }
+    }
 
-        JarOutputStream jarOutputStream = null;
+    /**
+     * Releases the working directory once the downloads that outlived their update check are done,
+     * as they still write .new files. Returns right away, the downloads are waited for in the
+     * background.
+     */
+    private void unlockAfterDownloads(final WorkDirLock lock) {
+        final List<Thread> downloads;
+        synchronized (lingeringDownloads) {
+            downloads = new ArrayList<>(lingeringDownloads);
+            lingeringDownloads.clear();
+        }
+        if (downloads.isEmpty()) {
+            if (lock != null) {
+                lock.close();
+            }
+            return;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (Thread download : downloads) {
+                        download.join();
+                    }
+                } catch (InterruptedException ignored) {
+                } finally {
+                    if (lock != null) {
+                        lock.close();
+                    }
+                }
+            }
+        }, "Unlock after downloads");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Downloads pending updates into the .new files checkUpdate picks up on the next start, so
+     * that start only has to rename and extract them. Nothing is extracted or started. Meant for
+     * cron or a systemd timer; with an interval it keeps running and prefetches again every so
+     * many minutes.
+     *
+     * @param intervalMinutes 0 to prefetch once
+     */
+    public void prefetch(long intervalMinutes) {
+        File lockFile = new File(workDir, PREFETCH_LOCK_FILE);
+        WorkDirLock lock;
         try {
-          jarOutputStream = new JarOutputStream(new FileOutputStream(launcherJar));
-          Pack200.newUnpacker().unpack(lzmaUnpacked, jarOutputStream);
-        } catch (Exception e) {
-          throw new FatalBootstrapError(new StringBuilder().append("Unable to un-pack200: ").append(e).toString());
+            lock = WorkDirLock.tryAcquire(lockFile);
+        } catch (IOException e) {
+            throw new FatalBootstrapError(new StringBuilder().append("Unable to lock ").append(lockFile).append(": ").append(e).toString());
+        }
+        if (lock == null) {
+            println("Another prefetch is running in " + workDir.toString());
+            return;
+        }
+
+        Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+        try {
+            while (true) {
+                List<Artifact> artifacts = selectLauncher(getArtifacts());
+                preconnect(artifacts);
+                int staged = 0;
+                // One at a time, nobody is waiting for them
+                for (Artifact artifact : artifacts) {
+                    if (prefetch(artifact)) {
+                        staged++;
+                    }
+                }
+                mirrorStats.save();
+                saveTrace();
+                println(new StringBuilder().append("Prefetched ").append(staged).append(" of ").append(artifacts.size()).append(" artifacts").toString());
+                flushLog();
+
+                if (intervalMinutes <= 0L) {
+                    return;
+                }
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(intervalMinutes));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
         } finally {
-          closeSilently(jarOutputStream);
+            lock.close();
+        }
+    }
+
+    /**
+     * Downloads the artifact to name.prefetch and, once verified, moves it to name.new. A prefetch
+     * that gets killed halfway therefore never leaves a broken .new behind.
+     *
+     * @return true when an update was staged
+     */
+    private boolean prefetch(Artifact artifact) {
+        File packedFile = artifact.getPackedFile();
+        File packedFileNew = artifact.getPackedFileNew();
+        File prefetchFile = new File(workDir, artifact.getName() + ".prefetch");
+        // Left over by a prefetch that got killed
+        prefetchFile.delete();
+
+        // A staged update is what the next start will use, so compare against that
+        File current = packedFileNew.isFile() ? packedFileNew : packedFile;
+        Downloader.Controller controller = new Downloader.Controller();
+        Downloader downloader = new Downloader(controller, this, proxy, current.isFile() ? getMd5(current) : null, packedFile, prefetchFile, artifact.getUrl());
+        downloader.setServerMd5(artifact.getMd5());
+        downloader.setExpectedSize(artifact.getSize());
+        downloader.setMirrorUrl(getMirrorUrl(artifact));
+        downloader.setMirrors(artifact.getMirrors());
+        downloader.setMirrorStats(mirrorStats);
+        downloader.setHedgeDelay(hedgeDelay);
+        downloader.setPatchBase(current);
+        downloader.run();
+
+        if (!controller.foundUpdate.get()) {
+            prefetchFile.delete();
+            return false;
+        }
+        if (controller.hasDownloadedLatch.getCount() != 0L) {
+            prefetchFile.delete();
+            println(new StringBuilder().append("Unable to prefetch ").append(artifact).append(", trying again next time").toString());
+            return false;
+        }
+
+        // A bootstrap holding the lock may be renaming or downloading this very .new file
+        try (WorkDirLock lock = WorkDirLock.tryAcquire(new File(workDir, LOCK_FILE))) {
+            if (lock == null) {
+                prefetchFile.delete();
+                println(new StringBuilder().append("A bootstrap is updating ").append(workDir).append(", dropping the prefetched ").append(artifact).toString());
+                return false;
+            }
+            Files.move(prefetchFile.toPath(), packedFileNew.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            prefetchFile.delete();
+            println(new StringBuilder().append("Unable to stage ").append(artifact).append(": ").append(e).toString());
+            return false;
+        }
+        println(new StringBuilder().append("Staged ").append(packedFileNew.getName()).append(" for the next start").toString());
+        return true;
+    }
+
+    /**
+     * Reports the deferred updates once they are done and does what update() leaves to them.
+     */
+    private void finishInBackground(final List<Artifact> artifacts, final List<Future<?>> updates, final WorkDirLock lock) {
+        final long start = System.nanoTime();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < updates.size(); i++) {
+                        try {
+                            updates.get(i).get();
+                        } catch (ExecutionException e) {
+                            println(new StringBuilder().append("Background update of ").append(artifacts.get(i)).append(" failed, retrying on next start: ").append(e.getCause()).toString());
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                } finally {
+                    unlockAfterDownloads(lock);
+                }
+                if (artifactStore != null) {
+                    artifactStore.trim();
+                }
+                mirrorStats.save();
+                saveTrace();
+                println(new StringBuilder().append("Background updates done in ").append((System.nanoTime() - start) / 1000000L).append("ms").toString());
+            }
+        }, "Background updates");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Keeps this working directory up to date and serves its artifacts to other bootstraps
+     * on the network. Never returns.
+     */
+    public void serveMirror(int port, long refreshMinutes) throws IOException {
+        MirrorServer server = new MirrorServer(this, port);
+        List<Artifact> artifacts;
+        try {
+            artifacts = update(false);
+        } catch (FatalBootstrapError e) {
+            // Serve what is on disk, clients check everything against the hashes of the origin
+            println("Mirror update failed, serving the artifacts already here: " + e.getMessage());
+            artifacts = selectLauncher(getArtifacts());
+        }
+        server.publish(artifacts);
+        saveTrace();
+        server.start();
+        while (true) {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(refreshMinutes));
+            } catch (InterruptedException e) {
+                server.stop();
+                throw new FatalBootstrapError(new StringBuilder().append("Got interrupted: ").append(e.toString()).toString());
+            }
+            try {
+                server.publish(update(false));
+            } catch (FatalBootstrapError e) {
+                // Keep serving what we have, the next refresh may work again
+                println("Mirror refresh failed: " + e.getMessage());
+            }
+            saveTrace();
+        }
+    }
+
+    /**
+     * @param mirrorUrl base url of a bootstrap started with --serveMirror, tried before the origin
+     */
+    public void setMirrorUrl(String mirrorUrl) {
+        this.mirrorUrl = (mirrorUrl == null) || (mirrorUrl.endsWith("/")) ? mirrorUrl : mirrorUrl + "/";
+    }
+
+    /**
+     * @param hedgeDelay milliseconds before a second mirror is asked for a file the first one hasn't delivered yet
+     */
+    public void setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    private String getMirrorUrl(Artifact artifact) {
+        return mirrorUrl == null ? null : mirrorUrl + artifact.getName();
+    }
+
+    /**
+     * Keeps only the first launcher artifact this JVM can decode, so only one format is downloaded.
+     * When there is none the first one is kept, unpacking it explains what is missing.
+     */
+    private List<Artifact> selectLauncher(List<Artifact> artifacts) {
+        Artifact launcher = null;
+        for (Artifact artifact : artifacts) {
+            if ((artifact.isLauncher()) && ((launcher == null) || ((!launcher.getCodec().isAvailable()) && (artifact.getCodec().isAvailable())))) {
+                launcher = artifact;
+            }
+        }
+
+        List<Artifact> selected = new ArrayList<>();
+        for (Artifact artifact : artifacts) {
+            if ((!artifact.isLauncher()) || (artifact == launcher)) {
+                selected.add(artifact);
+            }
+        }
+        if (launcher != null) {
+            println(new StringBuilder().append("Using ").append(launcher.getName()).append(" (").append(launcher.getCodec()).append(")").toString());
+        }
+        return selected;
+    }
+
+    /**
+     * Opens a connection to every origin and mirror while the local files are still being hashed,
+     * so the TCP and TLS handshakes are done by the time the first download needs them. Once the
+     * HEAD request is answered the connection waits in the keep-alive cache, and its latency
+     * helps ranking the mirrors.
+     */
+    private void preconnect(List<Artifact> artifacts) {
+        Set<String> origins = new HashSet<>();
+        List<String> urls = new ArrayList<>();
+        for (Artifact artifact : artifacts) {
+            urls.add(artifact.getUrl());
+            urls.addAll(artifact.getMirrors());
+        }
+        for (String spec : urls) {
+            final URL url;
+            try {
+                url = new URL(spec);
+            } catch (MalformedURLException e) {
+                continue;
+            }
+            if (!origins.add(new StringBuilder().append(url.getProtocol()).append("://").append(url.getAuthority()).toString())) {
+                continue;
+            }
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    try {
+                        HttpURLConnection connection = Downloader.openConnection(url, proxy);
+                        connection.setRequestMethod("HEAD");
+                        connection.setConnectTimeout(30000);
+                        connection.setReadTimeout(10000);
+                        if (connection.getResponseCode() < 500) {
+                            mirrorStats.recordLatency(url, System.nanoTime() - start);
+                        } else {
+                            mirrorStats.recordFailure(url);
+                        }
+                        trace.record(url.getHost(), "preconnect", start, 0L);
+                    } catch (IOException e) {
+                        // The download will report it
+                        mirrorStats.recordFailure(url);
+                    }
+                }
+            }, "Preconnect to " + url.getHost());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * @param deadline   System.nanoTime() by which the check has to have found an update, shared by
+     *                   the checks of one update so they wait for the slowest one only once
+     * @param background true for a deferred artifact, it runs at a low thread priority so it
+     *                   doesn't compete with the launcher starting up
+     */
+    private Future<?> submitUpdate(ExecutorService executor, final boolean force, final Artifact artifact, final long deadline, final boolean background) {
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                Thread thread = Thread.currentThread();
+                int priority = thread.getPriority();
+                if (background) {
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                }
+                try {
+                    checkUpdate(force, artifact, deadline);
+                } finally {
+                    thread.setPriority(priority);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the artifact list from the update manifest, falling back to the last manifest we saw
+     * and then to the artifacts this bootstrap was built with.
+     */
+    public List<Artifact> getArtifacts() {
+        File cachedManifest = new File(workDir, "manifest.json");
+        try {
+            URL manifestUrl = new URL(MANIFEST_URL);
+            try {
+                long start = System.nanoTime();
+                HttpURLConnection connection = Downloader.openConnection(manifestUrl, proxy);
+                connection.setUseCaches(false);
+                connection.setRequestProperty("Cache-Control", "no-store,max-age=0,no-cache");
+                connection.setConnectTimeout(5000);
+                connection.setReadTimeout(5000);
+
+                byte[] data;
+                try (InputStream inputStream = connection.getInputStream()) {
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[65536];
+                    int read;
+                    while ((read = inputStream.read(buffer)) >= 0) {
+                        outputStream.write(buffer, 0, read);
+                    }
+                    data = outputStream.toByteArray();
+                }
+                trace.record(cachedManifest.getName(), "check", start, data.length);
+
+                UpdateManifest manifest = UpdateManifest.parse(new ByteArrayInputStream(data));
+                try (OutputStream outputStream = new FileOutputStream(cachedManifest)) {
+                    outputStream.write(data);
+                }
+                println("Using update manifest version " + manifest.getVersion());
+                return manifest.getArtifacts(workDir, manifestUrl);
+            } catch (IOException e) {
+                println("Unable to fetch update manifest: " + e.toString());
+            }
+
+            if (cachedManifest.isFile()) {
+                try (InputStream inputStream = new FileInputStream(cachedManifest)) {
+                    UpdateManifest manifest = UpdateManifest.parse(inputStream);
+                    println("Using cached update manifest");
+                    // The cached hashes may be stale, so ask the server for them again
+                    List<Artifact> artifacts = new ArrayList<>();
+                    for (Artifact artifact : manifest.getArtifacts(workDir, manifestUrl)) {
+                        artifacts.add(new Artifact(artifact.getName(), artifact.getUrl(), artifact.getPackedFile(), artifact.getPackedFileNew(), artifact.getFolder(), null, -1L, artifact.getPriority(), artifact.getMirrors(), artifact.getCodec().getName(), artifact.isDeferred()));
+                    }
+                    return artifacts;
+                } catch (IOException e) {
+                    println("Unable to read cached update manifest: " + e.toString());
+                }
+            }
+        } catch (MalformedURLException e) {
+            println("Invalid update manifest url: " + e.toString());
+        }
+
+        List<Artifact> artifacts = new ArrayList<>();
+        artifacts.add(Artifact.create(workDir, packedLauncherJar.getName(), "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/launcher.pack.lzma", null, -1L, 100, null));
+        artifacts.add(Artifact.create(workDir, packedModsZip.getName(), "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/mods.zip", null, -1L, 0, null));
+        artifacts.add(Artifact.create(workDir, packedConfigZip.getName(), "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/config.zip", null, -1L, 0, null));
+        artifacts.add(Artifact.create(workDir, packedLibrariesZip.getName(), "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/libraries.zip", null, -1L, 0, null));
+        artifacts.add(Artifact.create(workDir, packedResourcepacksZip.getName(), "https://dl.dropboxusercontent.com/u/69130671/Minecraft/BML/resourcepacks.zip", null, -1L, 0, null, Collections.<String>emptyList(), null, true));
+        return artifacts;
+    }
+
+    private void awaitUpdate(Future<?> update) {
+        try {
+            update.get();
+        } catch (InterruptedException e) {
+            throw new FatalBootstrapError(new StringBuilder().append("Got interrupted: ").append(e.toString()).toString());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FatalBootstrapError) {
+                throw (FatalBootstrapError) cause;
+            }
+            throw new FatalBootstrapError(new StringBuilder().append("Update failed: ").append(cause).toString());
+        }
+    }
+
+    public void unpack() {
+        unpack(packedLauncherJar, ArtifactCodec.LEGACY);
+    }
+
+    /**
+     * Decodes the downloaded launcher artifact into launcher.jar, unless launcher.jar was already
+     * made from this exact file.
+     */
+    public void unpack(File packedFile, ArtifactCodec codec) {
+        File sourceFile = new File(workDir, "launcher.jar.source");
+        String packedMd5 = getMd5(packedFile);
+        if ((packedMd5 != null) && (launcherJar.isFile()) && (packedMd5.equalsIgnoreCase(readFirstLine(sourceFile)))) {
+            println(new StringBuilder().append(launcherJar.getName()).append(" is up to date with ").append(packedFile.getName()).toString());
+            return;
+        }
+        if (!codec.isAvailable()) {
+            throw new FatalBootstrapError(new StringBuilder().append("Unable to unpack ").append(packedFile.getName()).append(": ").append(codec).append(" is not supported on Java ").append(System.getProperty("java.version")).toString());
         }
 
-        println(new StringBuilder().append("Cleaning up ").append(lzmaUnpacked).toString());
+        File launcherJarNew = new File(workDir, "launcher.jar.new");
+        sourceFile.delete();
 
-        lzmaUnpacked.delete();
+        long start = System.nanoTime();
+        if (!packedFile.equals(launcherJar)) {
+            println(new StringBuilder().append("Unpacking ").append(packedFile).append(" to ").append(launcherJar).append(" (").append(codec).append(")").toString());
+            try {
+                codec.decode(packedFile, launcherJarNew);
+            } catch (IOException | RuntimeException e) {
+                launcherJarNew.delete();
+                throw new FatalBootstrapError(new StringBuilder().append("Unable to unpack: ").append(e).toString());
+            }
+            replaceLauncherJar(launcherJarNew);
+        }
+        trace.record(packedFile.getName(), "unpack", start, launcherJar.length());
+
+        if (packedMd5 != null) {
+            try (OutputStream outputStream = new FileOutputStream(sourceFile)) {
+                outputStream.write(packedMd5.getBytes("UTF-8"));
+            } catch (IOException e) {
+                sourceFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Decodes the launcher artifact into memory for startLauncher, launcher.jar is left alone. A
+     * plain jar is mapped instead of read.
+     */
+    private void loadLauncherImage(File packedFile, ArtifactCodec codec) {
+        if (!codec.isAvailable()) {
+            throw new FatalBootstrapError(new StringBuilder().append("Unable to unpack ").append(packedFile.getName()).append(": ").append(codec).append(" is not supported on Java ").append(System.getProperty("java.version")).toString());
+        }
+
+        long start = System.nanoTime();
+        ByteBuffer image;
+        try {
+            if (codec == ArtifactCodec.PLAIN) {
+                try (FileChannel channel = new FileInputStream(packedFile).getChannel()) {
+                    image = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+                }
+            } else {
+                ImageOutputStream outputStream = new ImageOutputStream((int) Math.min(Integer.MAX_VALUE / 4, packedFile.length() * 3L));
+                codec.decode(packedFile, outputStream);
+                image = outputStream.toByteBuffer();
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new FatalBootstrapError(new StringBuilder().append("Unable to unpack: ").append(e).toString());
+        }
+        trace.record(packedFile.getName(), "unpack", start, image.limit());
+        println(new StringBuilder().append("Loaded ").append(packedFile.getName()).append(" into memory (").append(codec).append(", ").append(image.limit() / 1024).append("kb)").toString());
+        launcherImage = image;
+    }
+
+    /**
+     * Starts the launcher from memory instead of launcher.jar, --cds needs the jar and ignores this.
+     */
+    public void setInMemory(boolean inMemory) {
+        this.inMemory = inMemory;
+    }
+
+    private static class ImageOutputStream extends ByteArrayOutputStream
+    {
+        ImageOutputStream(int size) {
+            super(size);
+        }
+
+        /**
+         * @return the written bytes without copying them
+         */
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count).slice();
+        }
+    }
+
+    private void replaceLauncherJar(File launcherJarNew) {
+        if ((launcherJar.exists()) && (!launcherJar.delete())) {
+            throw new FatalBootstrapError(new StringBuilder().append("Unable to replace ").append(launcherJar).toString());
+        }
+        if (!launcherJarNew.renameTo(launcherJar)) {
+            try {
+                copyFile(launcherJarNew, launcherJar);
+                launcherJarNew.delete();
+            } catch (IOException e) {
+                throw new FatalBootstrapError(new StringBuilder().append("unable to copy:").append(e).toString());
+            }
+        }
+    }
+
+    private static String readFirstLine(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            return reader.readLine();
+        } catch (IOException e) {
+            return null;
+        }
     }
   
     public void unzip(File packedFile, File outputDir) {
+        long start = System.nanoTime();
         try {
+            List<ZipEntry> entries = new ArrayList<>();
             try (ZipFile zipFile = new ZipFile(packedFile)) {
                 Enumeration<?> enu = zipFile.entries();
                 while (enu.hasMoreElements()) {
-                    ZipEntry zipEntry = (ZipEntry) enu.nextElement();
+                    entries.add((ZipEntry) enu.nextElement());
+                }
+            }
 
-                    String name = zipEntry.getName();
-                    println ("Extracting " + name);
+            println ("Extracting " + packedFile.getName());
+            new ZipExtractor(this, packedFile, outputDir, getStoreFor(packedFile)).extract(entries);
+            trace.record(packedFile.getName(), "extract", start, packedFile.length());
+	} catch (IOException e) {
+		println("Error while extracting " + packedFile.toString() + ": " + e.toString());
+        }
+    }
 
-                    File file = new File(outputDir, name);
+    /**
+     * Brings outputDir in line with packedFile by only writing entries whose CRC or size differ
+     * from the manifest of the previous extraction, and deleting files that left the archive.
+     */
+    public void syncZip(File packedFile, File outputDir, File manifestFile) {
+        long start = System.nanoTime();
+        ExtractManifest previous = ExtractManifest.load(manifestFile);
+        ExtractManifest current = new ExtractManifest();
+        List<ZipEntry> changed = new ArrayList<>();
+        int removed = 0;
+
+        try {
+            try (ZipFile zipFile = new ZipFile(packedFile)) {
+                Enumeration<?> enu = zipFile.entries();
+                while (enu.hasMoreElements()) {
+                    ZipEntry zipEntry = (ZipEntry) enu.nextElement();
+                    String name = zipEntry.getName();
                     if (name.endsWith("/")) {
-                            file.mkdirs();
-                            continue;
+                        changed.add(zipEntry);
+                        continue;
                     }
 
-                    File parent = file.getParentFile();
-                    if (parent != null) {
-                            parent.mkdirs();
+                    current.put(name, zipEntry.getCrc(), zipEntry.getSize());
+                    ExtractManifest.Entry known = previous.get(name);
+                    File file = new File(outputDir, name);
+                    if ((known != null) && (known.matches(zipEntry.getCrc(), zipEntry.getSize())) && (file.isFile()) && (file.length() == zipEntry.getSize())) {
+                        continue;
                     }
-                    FileOutputStream fos;
-                    try (InputStream is = zipFile.getInputStream(zipEntry)) {
-                        fos = new FileOutputStream(file);
-                        byte[] bytes = new byte[1024];
-                        int length;
-                        while ((length = is.read(bytes)) >= 0) {
-                                fos.write(bytes, 0, length);
-                        }
+
+                    changed.add(zipEntry);
+                }
+            }
+
+            new ZipExtractor(this, packedFile, outputDir, getStoreFor(packedFile)).extract(changed);
+
+            for (String name : previous.names()) {
+                if (current.get(name) == null) {
+                    File file = new File(outputDir, name);
+                    if ((file.isFile()) && (!file.delete())) {
+                        println("Unable to remove " + file.toString());
                     }
-                    fos.close();
+                    removed++;
                 }
             }
-	} catch (IOException e) {
-		println("Error while extracting " + packedFile.toString() + ": " + e.toString());
+
+            current.save(manifestFile);
+            trace.record(packedFile.getName(), "extract", start, packedFile.length());
+            println(new StringBuilder().append("Synced ").append(packedFile.getName()).append(": ").append(changed.size()).append(" changed, ").append(removed).append(" removed").toString());
+        } catch (IOException e) {
+            println("Error while extracting " + packedFile.toString() + ": " + e.toString());
+            manifestFile.delete();
         }
     }
 
+    public ArtifactStore getArtifactStore() {
+        return artifactStore;
+    }
+
+    public StartupTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Appends the phases recorded so far to the startup trace in the working directory.
+     */
+    public void saveTrace() {
+        trace.save();
+    }
+
+    private ArtifactStore getStoreFor(File packedFile) {
+        // Config files get edited in place by the game, so they can't be shared
+        return packedFile.equals(packedConfigZip) ? null : artifactStore;
+    }
+
     public void checkUpdate(boolean force, File packedFile, File packedFileNew, String URL) {
+        checkUpdate(force, packedFile, packedFileNew, URL, System.nanoTime() + TimeUnit.SECONDS.toNanos(UPDATE_CHECK_TIMEOUT));
+    }
+
+    public void checkUpdate(boolean force, File packedFile, File packedFileNew, String URL, long deadline) {
+        File FileFolder = new File(workDir, Artifact.getDefaultFolder(packedFileNew.getName()));
+        checkUpdate(force, new Artifact(packedFile.getName(), URL, packedFile, packedFileNew, FileFolder, null, -1L, 0), deadline);
+    }
+
+    public void checkUpdate(boolean force, Artifact artifact, long deadline) {
         boolean update = false;
-        File FileFolder = new File(workDir, packedFileNew.getName().substring(0, packedFileNew.getName().indexOf(".")));
+        File packedFile = artifact.getPackedFile();
+        File packedFileNew = artifact.getPackedFileNew();
+        File FileFolder = artifact.getFolder();
+        String URL = artifact.getUrl();
         
         if (packedFileNew.isFile()) {
             println("Found cached update");
@@ -218,81 +889,129 @@ public final class Bootstrap extends JFrame
         }
         
         Downloader.Controller controller = new Downloader.Controller();
+        File manifestFile = new File(workDir, packedFile.getName() + ".manifest");
+        StreamExtractor streamExtractor = null;
 
         if ((force) || (!packedFile.exists())) {
-            Downloader downloader = new Downloader(controller, this, proxy, null, packedFileNew, URL);
+            Downloader downloader = new Downloader(controller, this, proxy, null, packedFile, packedFileNew, URL);
+            downloader.setServerMd5(artifact.getMd5());
+            downloader.setExpectedSize(artifact.getSize());
+            downloader.setMirrorUrl(getMirrorUrl(artifact));
+            downloader.setMirrors(artifact.getMirrors());
+            downloader.setMirrorStats(mirrorStats);
+            downloader.setHedgeDelay(hedgeDelay);
+            if ((!artifact.isLauncher()) && ((!FileFolder.exists()) || (!manifestFile.isFile()))) {
+                // The whole tree has to be extracted anyway, so do it while the bytes come in
+                streamExtractor = new StreamExtractor(this, new File(workDir, ".staging-" + packedFile.getName()), getStoreFor(packedFile));
+                downloader.setStreamExtractor(streamExtractor);
+            }
             downloader.run();
 
             if (controller.hasDownloadedLatch.getCount() != 0L) {
+                if (streamExtractor != null) {
+                    streamExtractor.discard();
+                }
                 throw new FatalBootstrapError("Unable to download while being forced");
             }
 
             renameNew(packedFile, packedFileNew);
+            rememberMd5(packedFile, downloader);
             update = true;
         } else {
             String md5 = getMd5(packedFile);
 
-            Thread thread = new Thread(new Downloader(controller, this, proxy, md5, packedFileNew, URL));
+            Downloader downloader = new Downloader(controller, this, proxy, md5, packedFile, packedFileNew, URL);
+            downloader.setServerMd5(artifact.getMd5());
+            downloader.setExpectedSize(artifact.getSize());
+            downloader.setMirrorUrl(getMirrorUrl(artifact));
+            downloader.setMirrors(artifact.getMirrors());
+            downloader.setMirrorStats(mirrorStats);
+            downloader.setHedgeDelay(hedgeDelay);
+            Thread thread = new Thread(downloader);
             thread.setName("Downloader for " + packedFile.getName());
             thread.start();
             try
             {
                 println("Looking for update of " + packedFile.getName());
-                boolean wasInTime = controller.foundUpdateLatch.await(3L, TimeUnit.SECONDS);
+                boolean wasInTime = controller.foundUpdateLatch.await(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
 
                 if (controller.foundUpdate.get()) {
                     println("Found update in time, waiting to download");
                     controller.hasDownloadedLatch.await();
                     
                     renameNew(packedFile, packedFileNew);
+                    rememberMd5(packedFile, downloader);
                     update = true;
                 } else if (!wasInTime) {
                     println("Didn't find an update in time.");
+                    // It may still find one and download it to packedFileNew for the next start
+                    synchronized (lingeringDownloads) {
+                        lingeringDownloads.add(thread);
+                    }
                 }
             } catch (InterruptedException e) {
                 throw new FatalBootstrapError(new StringBuilder().append("Got interrupted: ").append(e.toString()).toString());
             }
         }
         
-        if (packedFile == packedLauncherJar)
+        long startCommit = System.nanoTime();
+        if ((artifact.isLauncher()) && (frame == null)) {
+            // Nothing is launched headless, launcher.jar is only prepared for a later start
+            if (artifact.getCodec().isAvailable()) {
+                unpack(packedFile, artifact.getCodec());
+            } else {
+                println(new StringBuilder().append("Not unpacking ").append(packedFile.getName()).append(": ").append(artifact.getCodec()).append(" is not supported on Java ").append(System.getProperty("java.version")).toString());
+            }
+        } else if ((artifact.isLauncher()) && (inMemory)) {
+            loadLauncherImage(packedFile, artifact.getCodec());
+        } else if (artifact.isLauncher())
         {
-            unpack();
-        } else if (update == true || !FileFolder.exists()) {
-            deleteFile(FileFolder);
-            unzip(packedFile, workDir);
+            unpack(packedFile, artifact.getCodec());
+        } else if ((streamExtractor != null) && (streamExtractor.commit(workDir, manifestFile))) {
+            // The files were extracted during the transfer, this only moves them into place
+            trace.record(packedFile.getName(), "extract", startCommit, 0L);
+        } else {
+            if (streamExtractor != null) {
+                streamExtractor.discard();
+            }
+            if (!FileFolder.exists()) {
+                manifestFile.delete();
+            }
+            if (update == true || !manifestFile.isFile()) {
+                if (!manifestFile.isFile()) {
+                    // Without a record of what we extracted last time the tree can't be trusted
+                    deleteFile(FileFolder);
+                }
+                syncZip(packedFile, workDir, manifestFile);
+            }
         }
     }
     
-    public void deleteFile(File file) {
-        println("Deleting " + file.toString());
-        try {
-            if(file.isDirectory()){
-                    //directory is empty, then delete it
-                    if(file.list().length==0) {
-                        file.delete();
-                    } else {
-                        //list all the directory contents
-                        String files[] = file.list();
-
-                        for (String temp : files) {
-                            //construct the file structure
-                            File fileDelete = new File(file, temp);
-
-                            //recursive delete
-                            deleteFile(fileDelete);
-                        }
+    private void rememberMd5(File packedFile, Downloader downloader) {
+        if (downloader.getVerifiedMd5() != null) {
+            hashIndex.put(packedFile, downloader.getVerifiedMd5());
+        } else {
+            hashIndex.remove(packedFile);
+        }
+    }
 
-                        //check the directory again, if empty then delete it
-                        if(file.list().length==0){
-                            file.delete();
-                        }
-                    }
-            } else {
-                //if file, then delete it
-                file.delete();
-            }
-        } catch (Exception e) {
-            println("Error while deleting " + file.toString() + e.toString());
+    /**
+     * Deletes a file or a whole tree. A directory is renamed into the trash and deleted in the
+     * background, so it is gone from its place right away. When it can't be renamed it is deleted
+     * here.
+     */
+    public void deleteFile(File file) {
+        if ((file.isDirectory()) && (trash.moveToTrash(file))) {
+            println("Moved " + file.toString() + " to the trash");
+            return;
+        }
+        long start = System.nanoTime();
+        long deleted = Trash.delete(file.toPath());
+        if (deleted > 0L) {
+            println(new StringBuilder().append("Deleted ").append(file).append(" (").append(deleted).append(" files) in ").append((System.nanoTime() - start) / 1000000L).append("ms").toString());
+        }
+        if (file.exists()) {
+            println("Unable to delete all of " + file.toString());
         }
     }
     
@@ -305,33 +1024,39 @@ public final class Bootstrap extends JFrame
       }
   }
 
-  private File getUnpackedLzmaFile(File packedLauncherJar) {
-    String filePath = packedLauncherJar.getAbsolutePath();
-    if (filePath.endsWith(".lzma")) {
-      filePath = filePath.substring(0, filePath.length() - 5);
+  public String getMd5(File file) {
+    long start = System.nanoTime();
+    String md5 = hashIndex.get(file);
+    if (md5 != null) {
+      trace.record(file.getName(), "hash", start, 0L);
+      return md5;
     }
-    return new File(filePath);
+
+    md5 = computeMd5(file);
+    if (md5 != null) {
+      hashIndex.put(file, md5);
+    }
+    trace.record(file.getName(), "hash", start, file.length());
+    return md5;
   }
 
-  public String getMd5(File file) {
-    DigestInputStream stream = null;
+  public static String computeMd5(File file) {
+    FileChannel channel = null;
     try {
-      stream = new DigestInputStream(new FileInputStream(file), MessageDigest.getInstance("MD5"));
-      byte[] buffer = new byte[65536];
+      channel = new FileInputStream(file).getChannel();
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      ByteBuffer buffer = ByteBuffer.allocateDirect(1048576);
 
-      int read = stream.read(buffer);
-      while (read >= 1)
-        read = stream.read(buffer);
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+      }
+      return String.format("%1$032x", new Object[] { new BigInteger(1, digest.digest()) });
     }
     catch (NoSuchAlgorithmException | IOException ignored) {
-      return null; } finally { closeSilently(stream);
+      return null; } finally { closeSilently(channel);
     }
-
-    if (stream != null)
-    {
-        return String.format("%1$032x", new Object[] { new BigInteger(1, stream.getMessageDigest().digest()) });
-    } else
-        return null;
   }
 
   public void println(String string) {
@@ -339,43 +1064,102 @@ public final class Bootstrap extends JFrame
   }
 
   public void print(String string) {
-    System.out.print(string);
-
-    outputBuffer.append(string);
+    logSink.log(string);
+  }
 
-    Document document = textArea.getDocument();
-    final JScrollBar scrollBar = scrollPane.getVerticalScrollBar();
+  /**
+   * Waits until everything logged so far has been written out.
+   */
+  public void flushLog() {
+    logSink.flush();
+  }
 
-    boolean shouldScroll = scrollBar.getValue() + scrollBar.getSize().getHeight() + MONOSPACED.getSize() * 2 > scrollBar.getMaximum();
-    try
-    {
-      document.insertString(document.getLength(), string, null);
-    }
-    catch (BadLocationException ignored) {
-    }
-    if (shouldScroll)
-      SwingUtilities.invokeLater(new Runnable() {
-        @Override
-        public void run() {
-          scrollBar.setValue(2147483647);
-        }
-      });
+  /**
+   * Everything logged recently, for crash reports.
+   */
+  public String getLogHistory() {
+    return logSink.getHistory();
   }
 
 public void startLauncher(File launcherJar)
   {
+    if (frame == null) {
+      println("Running headless, not starting the launcher.");
+      saveTrace();
+      logSink.flush();
+      return;
+    }
+    ByteBuffer image = launcherImage;
+    if ((image == null) && (cdsLauncher != null) && (startLauncherProcess(launcherJar))) {
+      return;
+    }
     println("Starting launcher.");
+    logSink.flush();
+    long start = System.nanoTime();
     try
     {
-      Class aClass = new URLClassLoader(new URL[] { launcherJar.toURI().toURL() }).loadClass("net.branzel.launcher.Launcher");
+      Class aClass;
+      long startLoad = System.nanoTime();
+      long size = launcherJar.length();
+      if (image != null) {
+        aClass = new InMemoryClassLoader(image, launcherJar.getName(), ClassLoader.getSystemClassLoader()).loadClass("net.branzel.launcher.Launcher");
+        size = image.limit();
+      } else if (ClassLoader.getSystemResource("net/branzel/launcher/Launcher.class") != null) {
+        // Started by CdsLauncher, the launcher is on the class path so its classes come from the archive
+        aClass = Class.forName("net.branzel.launcher.Launcher");
+      } else {
+        aClass = new URLClassLoader(new URL[] { launcherJar.toURI().toURL() }).loadClass("net.branzel.launcher.Launcher");
+      }
       Constructor constructor = aClass.getConstructor(new Class[] { JFrame.class, File.class, Proxy.class, PasswordAuthentication.class, Integer.class });
-      constructor.newInstance(new Object[] { this, this.workDir, this.proxy, this.proxyAuth, Integer.valueOf(2) });
-    } catch (MalformedURLException | ClassNotFoundException | NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+      trace.record(launcherJar.getName(), "classload", startLoad, size);
+      long startLaunch = System.nanoTime();
+      constructor.newInstance(new Object[] { frame, this.workDir, this.proxy, this.proxyAuth, Integer.valueOf(2) });
+      trace.record(launcherJar.getName(), "launch", startLaunch, 0L);
+    } catch (IOException | ClassNotFoundException | NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
       throw new FatalBootstrapError("Unable to start: " + e);
     }
+    saveTrace();
+    println(new StringBuilder().append("Launcher started in ").append((System.nanoTime() - start) / 1000000L).append("ms").toString());
+  }
+
+  public void setCdsLauncher(CdsLauncher cdsLauncher) {
+    this.cdsLauncher = cdsLauncher;
+  }
+
+  /**
+   * Hands the launcher over to a JVM with a class data archive and waits for it to exit.
+   *
+   * @return false when that isn't possible and the launcher should start in this JVM
+   */
+  private boolean startLauncherProcess(File launcherJar) {
+    // The md5 of the artifact launcher.jar was made from, whatever its format
+    String launcherMd5 = readFirstLine(new File(workDir, "launcher.jar.source"));
+    if ((!CdsLauncher.isSupported()) || (launcherMd5 == null) || (!launcherJar.isFile())) {
+      return false;
+    }
+
+    println("Starting launcher in a new JVM.");
+    Process process;
+    try {
+      process = cdsLauncher.start(this, launcherJar, launcherMd5);
+    } catch (IOException e) {
+      println("Unable to start a new JVM, starting in this one: " + e.toString());
+      return false;
+    }
+    saveTrace();
+    logSink.flush();
+    frame.dispose();
+
+    try {
+      System.exit(process.waitFor());
+    } catch (InterruptedException e) {
+      throw new FatalBootstrapError(new StringBuilder().append("Got interrupted: ").append(e.toString()).toString());
+    }
+    return true;
   }
 
     public void renameNew(File packedFile, File packedFileNew) {
+        long start = System.nanoTime();
         if ((packedFile.exists()) && (!packedFile.isFile()) && 
                 (!packedFile.delete())) {
             throw new FatalBootstrapError(new StringBuilder().append("while renaming, target path: ").append(packedFile.getAbsolutePath()).append(" is not a file and we failed to delete it").toString());
@@ -406,11 +1190,16 @@ public void startLauncher(File launcherJar)
                 else
                     println("Nevermind... file vanished?");
             }
+            trace.record(packedFile.getName(), "rename", start, packedFile.length());
         }
     }
 
   public static void copyFile(File source, File target) throws IOException
   {
+    // Replace rather than overwrite, the target may be linked into the shared store
+    if (target.exists()) {
+      target.delete();
+    }
     if (!target.exists()) {
       target.createNewFile();
     }
@@ -430,6 +1219,10 @@ public void startLauncher(File launcherJar)
       if (targetChannel != null)
         targetChannel.close();  }  } 
   public static void main(String[] args) throws IOException { System.setProperty("java.net.preferIPv4Stack", "true");
+    // The updaters and the segmented downloads share the idle connections to the origin, keep enough of them
+    if (System.getProperty("http.maxConnections") == null) {
+      System.setProperty("http.maxConnections", "8");
+    }
 
     OptionParser optionParser = new OptionParser();
     optionParser.allowsUnrecognizedOptions();
@@ -438,10 +1231,23 @@ public void startLauncher(File launcherJar)
     optionParser.accepts("force", "Force updating");
 
     OptionSpec proxyHostOption = optionParser.accepts("proxyHost", "Optional").withRequiredArg();
-    OptionSpec proxyPortOption = optionParser.accepts("proxyPort", "Optional").withRequiredArg().defaultsTo("8080", new String[0]).ofType(Integer.class);
+    OptionSpec proxyPortOption = optionParser.accepts("proxyPort", "Optional").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(8080), new Integer[0]);
     OptionSpec proxyUserOption = optionParser.accepts("proxyUser", "Optional").withRequiredArg();
     OptionSpec proxyPassOption = optionParser.accepts("proxyPass", "Optional").withRequiredArg();
     OptionSpec workingDirectoryOption = optionParser.accepts("workDir", "Optional").withRequiredArg().ofType(File.class).defaultsTo(Util.getWorkingDirectory(), new File[0]);
+    optionParser.accepts("headless", "Update without opening a window or starting the launcher");
+    optionParser.accepts("cds", "Start the launcher in a new JVM with a class data sharing archive (Java 13+)");
+    optionParser.accepts("launchOnly", "Start the launcher without updating, used by --cds");
+    optionParser.accepts("inMemory", "Start the launcher from memory without writing launcher.jar");
+    optionParser.accepts("traceReport", "Include the startup trace in crash reports");
+    optionParser.accepts("prefetch", "Download pending updates for the next start without starting anything, for cron or a systemd timer");
+    OptionSpec prefetchIntervalOption = optionParser.accepts("prefetchInterval", "Optional, with --prefetch keep running and prefetch every this many minutes").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(0), new Integer[0]);
+    OptionSpec sharedStoreOption = optionParser.accepts("sharedStore", "Optional, directory shared between working directories").withRequiredArg().ofType(File.class);
+    OptionSpec mirrorOption = optionParser.accepts("mirror", "Optional, url of a bootstrap on the local network started with --serveMirror").withRequiredArg();
+    OptionSpec serveMirrorOption = optionParser.accepts("serveMirror", "Keep the artifacts up to date and serve them to other bootstraps on this port").withRequiredArg().ofType(Integer.class);
+    OptionSpec mirrorRefreshOption = optionParser.accepts("mirrorRefresh", "Optional, minutes between updates while serving a mirror").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(30), new Integer[0]);
+    OptionSpec hedgeDelayOption = optionParser.accepts("hedgeDelay", "Optional, milliseconds before a second mirror is asked for the same file").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(2000), new Integer[0]);
+    OptionSpec sharedStoreSizeOption = optionParser.accepts("sharedStoreSize", "Optional, in MB").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(4096), new Integer[0]);
     OptionSpec nonOptions = optionParser.nonOptions();
     OptionSet optionSet;
     try { optionSet = optionParser.parse(args);
@@ -495,25 +1301,63 @@ public void startLauncher(File launcherJar)
 
     boolean force = optionSet.has("force");
 
-    Bootstrap frame = new Bootstrap(workingDirectory, proxy, passwordAuthentication, remainderArgs);
+    ArtifactStore artifactStore = null;
+    File sharedStore = (File)optionSet.valueOf(sharedStoreOption);
+    if (sharedStore != null) {
+      if ((!sharedStore.isDirectory()) && (!sharedStore.mkdirs()))
+        throw new FatalBootstrapError(new StringBuilder().append("Unable to create directory: ").append(sharedStore).toString());
+      artifactStore = new ArtifactStore(sharedStore, ((Integer)optionSet.valueOf(sharedStoreSizeOption)).intValue() * 1024L * 1024L);
+    }
+
+    // Only ask AWT when we have to, asking already loads part of it
+    boolean headless = (optionSet.has("headless")) || (optionSet.has("serveMirror")) || (optionSet.has("prefetch")) || (GraphicsEnvironment.isHeadless());
+
+    Bootstrap bootstrap = new Bootstrap(workingDirectory, proxy, passwordAuthentication, remainderArgs, artifactStore, headless);
+    if (optionSet.has("launchOnly")) {
+      bootstrap.startLauncher(new File(workingDirectory, "launcher.jar"));
+      return;
+    }
+    if (optionSet.has("cds")) {
+      List<String> launcherArgs = new ArrayList<>(Arrays.asList(args));
+      launcherArgs.remove("--cds");
+      launcherArgs.remove("--force");
+      bootstrap.setCdsLauncher(new CdsLauncher(workingDirectory, launcherArgs.toArray(new String[launcherArgs.size()])));
+    } else {
+      // The class data archive is made from launcher.jar, so --cds wins over --inMemory
+      bootstrap.setInMemory(optionSet.has("inMemory"));
+    }
+    bootstrap.setMirrorUrl((String)optionSet.valueOf(mirrorOption));
+    bootstrap.setHedgeDelay(((Integer)optionSet.valueOf(hedgeDelayOption)).intValue());
     try
     {
-      frame.execute(force);
+      if (optionSet.has("prefetch")) {
+        bootstrap.prefetch(((Integer)optionSet.valueOf(prefetchIntervalOption)).intValue());
+        return;
+      }
+      if (optionSet.has("serveMirror")) {
+        bootstrap.serveMirror(((Integer)optionSet.valueOf(serveMirrorOption)).intValue(), ((Integer)optionSet.valueOf(mirrorRefreshOption)).intValue());
+      }
+      bootstrap.execute(force);
     } catch (Throwable t) {
       ByteArrayOutputStream stracktrace = new ByteArrayOutputStream();
       t.printStackTrace(new PrintStream(stracktrace));
 
       StringBuilder report = new StringBuilder();
-      report.append(stracktrace).append("\n\n-- Head --\nStacktrace:\n").append(stracktrace).append("\n\n").append(frame.outputBuffer);
+      report.append(stracktrace).append("\n\n-- Head --\nStacktrace:\n").append(stracktrace).append("\n\n").append(bootstrap.getLogHistory());
       report.append("\tMinecraft.Bootstrap Version: 5");
+      bootstrap.saveTrace();
+      if (optionSet.has("traceReport")) {
+        report.append("\n\n-- Startup trace --\n").append(bootstrap.getTrace().toJsonLines());
+      }
       try
       {
         HopperService.submitReport(proxy, report.toString(), "Minecraft.Bootstrap", "5");
       }
       catch (Throwable ignored) {
       }
-      frame.println(new StringBuilder().append("FATAL ERROR: ").append(stracktrace.toString()).toString());
-      frame.println("\nPlease fix the error and restart.");
+      bootstrap.println(new StringBuilder().append("FATAL ERROR: ").append(stracktrace.toString()).toString());
+      bootstrap.println("\nPlease fix the error and restart.");
+      bootstrap.flushLog();
     } }
 
   public static boolean stringHasValue(String string)
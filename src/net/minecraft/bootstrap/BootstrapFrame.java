@@ -0,0 +1,76 @@
+package net.minecraft.bootstrap;
+
+import java.awt.Font;
+import javax.swing.JFrame;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultCaret;
+import javax.swing.text.Document;
+
+/**
+ * The bootstrap window. It only shows the log; the launcher takes the
+ * window over once it starts. Nothing outside this class touches Swing, so
+ * a headless bootstrap never loads it.
+ *
+ * @author Branzel
+ */
+public final class BootstrapFrame extends JFrame implements LogSink.Output
+{
+    private static final Font MONOSPACED = new Font("Monospaced", 0, 12);
+    private final JTextArea textArea;
+    private final JScrollPane scrollPane;
+
+    public BootstrapFrame() {
+        super("Minecraft Launcher");
+
+        setSize(854, 480);
+        setDefaultCloseOperation(3);
+
+        textArea = new JTextArea();
+        textArea.setLineWrap(true);
+        textArea.setEditable(false);
+        textArea.setFont(MONOSPACED);
+        ((DefaultCaret)textArea.getCaret()).setUpdatePolicy(1);
+
+        scrollPane = new JScrollPane(textArea);
+        scrollPane.setBorder(null);
+        scrollPane.setVerticalScrollBarPolicy(22);
+
+        add(scrollPane);
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+    @Override
+    public void write(final String text) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                appendToTextArea(text);
+            }
+        });
+    }
+
+    private void appendToTextArea(String string) {
+        Document document = textArea.getDocument();
+        final JScrollBar scrollBar = scrollPane.getVerticalScrollBar();
+
+        boolean shouldScroll = scrollBar.getValue() + scrollBar.getSize().getHeight() + MONOSPACED.getSize() * 2 > scrollBar.getMaximum();
+        try
+        {
+            document.insertString(document.getLength(), string, null);
+        }
+        catch (BadLocationException ignored) {
+        }
+        if (shouldScroll)
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    scrollBar.setValue(2147483647);
+                }
+            });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Starts the launcher in a fresh JVM that uses a class data sharing archive
+ * for launcher.jar. Class data sharing only applies to classes loaded when
+ * the JVM starts, so the launcher can't benefit from it inside the
+ * bootstrap's own JVM.
+ *
+ * The first start after an update records the archive when the launcher
+ * exits (-XX:ArchiveClassesAtExit); later starts map it in with
+ * -XX:SharedArchiveFile. Archives are named after the hash of the packed
+ * launcher, so a launcher update makes the old archive unused and it gets
+ * deleted.
+ *
+ * @author Branzel
+ */
+public class CdsLauncher
+{
+    private static final String ARCHIVE_PREFIX = "launcher-";
+    private static final String ARCHIVE_SUFFIX = ".jsa";
+    private final File workDir;
+    private final String[] bootstrapArgs;
+
+    /**
+     * @param bootstrapArgs the arguments the bootstrap was started with, passed on to the launcher JVM
+     */
+    public CdsLauncher(File workDir, String[] bootstrapArgs) {
+        this.workDir = workDir;
+        this.bootstrapArgs = bootstrapArgs;
+    }
+
+    /**
+     * Dynamic archives need Java 13 or later.
+     */
+    public static boolean isSupported() {
+        String version = System.getProperty("java.specification.version", "");
+        try {
+            return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version) >= 13;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public File getArchive(String launcherMd5) {
+        return new File(workDir, ARCHIVE_PREFIX + launcherMd5 + ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * Removes archives recorded for other versions of the launcher.
+     */
+    public void deleteStaleArchives(String launcherMd5) {
+        File current = getArchive(launcherMd5);
+        File[] files = workDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if ((file.getName().startsWith(ARCHIVE_PREFIX)) && (file.getName().endsWith(ARCHIVE_SUFFIX)) && (!file.equals(current))) {
+                file.delete();
+            }
+        }
+    }
+
+    public Process start(Bootstrap bootstrap, File launcherJar, String launcherMd5) throws IOException {
+        deleteStaleArchives(launcherMd5);
+        File archive = getArchive(launcherMd5);
+
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        if (archive.isFile()) {
+            bootstrap.println("Using class data archive " + archive.getName());
+            command.add("-XX:SharedArchiveFile=" + archive.getPath());
+        } else {
+            bootstrap.println("Recording class data archive " + archive.getName());
+            command.add("-XX:ArchiveClassesAtExit=" + archive.getPath());
+        }
+        // A broken or mismatched archive must never keep the launcher from starting
+        command.add("-Xshare:auto");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path") + File.pathSeparator + launcherJar.getPath());
+        command.add(Bootstrap.class.getName());
+        command.add("--launchOnly");
+        command.addAll(Arrays.asList(bootstrapArgs));
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(workDir);
+        builder.inheritIO();
+        return builder.start();
+    }
+}
\ No newline at end of file
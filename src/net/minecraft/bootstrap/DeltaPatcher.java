@@ -0,0 +1,524 @@
+package net.minecraft.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Applies binary patches published next to an artifact as
+ * {@code <url>.<md5 of the old version>.patch}.
+ *
+ * A patch is a VCDIFF delta (RFC 3284) using the default code table and no
+ * secondary compressor, optionally wrapped in gzip. A patch made with
+ * {@code xdelta3 -e -S none -s old new patch} can be published as is.
+ *
+ * Deflated zip entries change completely when a single byte of their content
+ * does, so for zip artifacts {@link PatchGenerator} diffs the expanded
+ * archives instead and marks the patch with the application header
+ * {@value #EXPANDED_ZIP}. The expanded form replaces every deflated entry
+ * whose bytes are reproduced by re-deflating its content with the data it
+ * inflates to; the patcher expands the old file, applies the delta and
+ * deflates the marked entries again. Should the local zlib deflate
+ * differently, the md5 check on the result fails and the full file is
+ * downloaded.
+ *
+ * @author Branzel
+ */
+public class DeltaPatcher
+{
+    static final String EXPANDED_ZIP = "bml-expanded-zip/1";
+
+    private static final int VCD_DECOMPRESS = 0x01;
+    private static final int VCD_CODETABLE = 0x02;
+    private static final int VCD_APPHEADER = 0x04;
+    private static final int VCD_SOURCE = 0x01;
+    private static final int VCD_TARGET = 0x02;
+    private static final int VCD_ADLER32 = 0x04;
+
+    private static final int NOOP = 0;
+    private static final int ADD = 1;
+    private static final int RUN = 2;
+    private static final int COPY = 3;
+
+    private static final int NEAR_SIZE = 4;
+    private static final int SAME_SIZE = 3;
+    private static final int MAX_WINDOW = 64 << 20;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final int SEGMENT_RAW = 0;
+    private static final int SEGMENT_DEFLATED = 1;
+
+    private static final int[][] TYPE = new int[2][256];
+    private static final int[][] SIZE = new int[2][256];
+    private static final int[][] MODE = new int[2][256];
+
+    static {
+        // The default code table from section 5.6 of RFC 3284.
+        int index = 0;
+        set(index++, RUN, 0, 0, NOOP, 0, 0);
+        for (int size = 0; size <= 17; size++) {
+            set(index++, ADD, size, 0, NOOP, 0, 0);
+        }
+        for (int mode = 0; mode <= 8; mode++) {
+            set(index++, COPY, 0, mode, NOOP, 0, 0);
+            for (int size = 4; size <= 18; size++) {
+                set(index++, COPY, size, mode, NOOP, 0, 0);
+            }
+        }
+        for (int mode = 0; mode <= 5; mode++) {
+            for (int addSize = 1; addSize <= 4; addSize++) {
+                for (int copySize = 4; copySize <= 6; copySize++) {
+                    set(index++, ADD, addSize, 0, COPY, copySize, mode);
+                }
+            }
+        }
+        for (int mode = 6; mode <= 8; mode++) {
+            for (int addSize = 1; addSize <= 4; addSize++) {
+                set(index++, ADD, addSize, 0, COPY, 4, mode);
+            }
+        }
+        for (int mode = 0; mode <= 8; mode++) {
+            set(index++, COPY, 4, mode, ADD, 1, 0);
+        }
+    }
+
+    private DeltaPatcher() {
+    }
+
+    private static void set(int index, int type1, int size1, int mode1, int type2, int size2, int mode2) {
+        TYPE[0][index] = type1;
+        SIZE[0][index] = size1;
+        MODE[0][index] = mode1;
+        TYPE[1][index] = type2;
+        SIZE[1][index] = size2;
+        MODE[1][index] = mode2;
+    }
+
+    public static void apply(File baseFile, InputStream patch, File targetFile) throws IOException {
+        InputStream input = new BufferedInputStream(patch, 65536);
+        input.mark(2);
+        boolean gzip = (input.read() == 0x1F) && (input.read() == 0x8B);
+        input.reset();
+        if (gzip) {
+            input = new BufferedInputStream(new GZIPInputStream(input, 65536), 65536);
+        }
+
+        if (!EXPANDED_ZIP.equals(readHeader(input))) {
+            decode(baseFile, input, targetFile);
+            return;
+        }
+
+        File source = new File(targetFile.getPath() + ".source");
+        File expanded = new File(targetFile.getPath() + ".expanded");
+        try {
+            expand(baseFile, source, false);
+            decode(source, input, expanded);
+            collapse(expanded, targetFile);
+        } finally {
+            source.delete();
+            expanded.delete();
+        }
+    }
+
+    /**
+     * Reads the VCDIFF file header and returns the application header, or null if there is none.
+     */
+    private static String readHeader(InputStream input) throws IOException {
+        if ((readByte(input) != 0xD6) || (readByte(input) != 0xC3) || (readByte(input) != 0xC4) || (readByte(input) != 0x00)) {
+            throw new IOException("Not a VCDIFF patch");
+        }
+        int indicator = readByte(input);
+        if ((indicator & VCD_DECOMPRESS) != 0) {
+            throw new IOException("Patch uses a secondary compressor");
+        }
+        if ((indicator & VCD_CODETABLE) != 0) {
+            throw new IOException("Patch uses a custom code table");
+        }
+        if ((indicator & ~VCD_APPHEADER) != 0) {
+            throw new IOException("Unknown VCDIFF header indicator " + indicator);
+        }
+        if ((indicator & VCD_APPHEADER) == 0) {
+            return null;
+        }
+        return new String(readBytes(input, readInt(input)), StandardCharsets.UTF_8);
+    }
+
+    private static void decode(File sourceFile, InputStream input, File targetFile) throws IOException {
+        try (RandomAccessFile source = new RandomAccessFile(sourceFile, "r");
+             RandomAccessFile target = new RandomAccessFile(targetFile, "rw")) {
+            target.setLength(0L);
+            int indicator;
+            while ((indicator = input.read()) >= 0) {
+                if (((indicator & ~(VCD_SOURCE | VCD_TARGET | VCD_ADLER32)) != 0) || ((indicator & VCD_SOURCE) != 0) && ((indicator & VCD_TARGET) != 0)) {
+                    throw new IOException("Unknown VCDIFF window indicator " + indicator);
+                }
+
+                RandomAccessFile segment = null;
+                long segmentLength = 0L;
+                long segmentPosition = 0L;
+                if ((indicator & (VCD_SOURCE | VCD_TARGET)) != 0) {
+                    segment = (indicator & VCD_SOURCE) != 0 ? source : target;
+                    segmentLength = readLong(input);
+                    segmentPosition = readLong(input);
+                    if (segmentPosition + segmentLength > segment.length()) {
+                        throw new IOException("Patch window refers past the end of its source");
+                    }
+                }
+
+                readLong(input);
+                int windowLength = readInt(input);
+                if (windowLength > MAX_WINDOW) {
+                    throw new IOException("Patch window is too large: " + windowLength);
+                }
+                if (readByte(input) != 0) {
+                    throw new IOException("Patch window uses secondary compression");
+                }
+                int dataLength = readInt(input);
+                int instructionsLength = readInt(input);
+                int addressesLength = readInt(input);
+                long checksum = -1L;
+                if ((indicator & VCD_ADLER32) != 0) {
+                    checksum = ByteBuffer.wrap(readBytes(input, 4)).getInt() & 0xFFFFFFFFL;
+                }
+                ByteArrayInputStream data = new ByteArrayInputStream(readBytes(input, dataLength));
+                ByteArrayInputStream instructions = new ByteArrayInputStream(readBytes(input, instructionsLength));
+                ByteArrayInputStream addresses = new ByteArrayInputStream(readBytes(input, addressesLength));
+
+                byte[] window = new byte[windowLength];
+                decodeWindow(segment, segmentPosition, segmentLength, data, instructions, addresses, window);
+                if (checksum >= 0L) {
+                    Adler32 adler = new Adler32();
+                    adler.update(window);
+                    if (adler.getValue() != checksum) {
+                        throw new IOException("Patch window checksum mismatch");
+                    }
+                }
+                target.seek(target.length());
+                target.write(window);
+            }
+        }
+    }
+
+    private static void decodeWindow(RandomAccessFile segment, long segmentPosition, long segmentLength, ByteArrayInputStream data, ByteArrayInputStream instructions, ByteArrayInputStream addresses, byte[] window) throws IOException {
+        long[] near = new long[NEAR_SIZE];
+        long[] same = new long[SAME_SIZE * 256];
+        int nextSlot = 0;
+        int here = 0;
+        while (instructions.available() > 0) {
+            int index = readByte(instructions);
+            for (int half = 0; half < 2; half++) {
+                int type = TYPE[half][index];
+                if (type == NOOP) {
+                    continue;
+                }
+                int size = SIZE[half][index];
+                if (size == 0) {
+                    size = readInt(instructions);
+                }
+                if (size > window.length - here) {
+                    throw new IOException("Patch instruction runs past the end of its window");
+                }
+
+                if (type == ADD) {
+                    readFully(data, window, here, size);
+                } else if (type == RUN) {
+                    Arrays.fill(window, here, here + size, (byte) readByte(data));
+                } else {
+                    long position = segmentLength + here;
+                    int mode = MODE[half][index];
+                    long address;
+                    if (mode == 0) {
+                        address = readLong(addresses);
+                    } else if (mode == 1) {
+                        address = position - readLong(addresses);
+                    } else if (mode < 2 + NEAR_SIZE) {
+                        address = near[mode - 2] + readLong(addresses);
+                    } else {
+                        address = same[(mode - 2 - NEAR_SIZE) * 256 + readByte(addresses)];
+                    }
+                    if ((address < 0L) || (address >= position)) {
+                        throw new IOException("Patch copies from an invalid address " + address);
+                    }
+                    near[nextSlot] = address;
+                    nextSlot = (nextSlot + 1) % NEAR_SIZE;
+                    same[(int) (address % same.length)] = address;
+
+                    int copied = 0;
+                    if (address < segmentLength) {
+                        copied = (int) Math.min(size, segmentLength - address);
+                        segment.seek(segmentPosition + address);
+                        segment.readFully(window, here, copied);
+                    }
+                    // The rest overlaps the window itself and may repeat bytes it is writing.
+                    for (int from = (int) (address + copied - segmentLength); copied < size; copied++) {
+                        window[here + copied] = window[from++];
+                    }
+                }
+                here += size;
+            }
+        }
+        if (here != window.length) {
+            throw new IOException("Patch window is shorter than declared");
+        }
+    }
+
+    /**
+     * Writes the expanded form of a zip file. With {@code exact} set only entries that deflate back
+     * to the same bytes are expanded, which the target of a patch needs; the source of a patch can
+     * have every entry expanded. Anything that is not a zip file is copied as a single raw segment.
+     */
+    static void expand(File zipFile, File expandedFile, boolean exact) throws IOException {
+        try (RandomAccessFile zip = new RandomAccessFile(zipFile, "r");
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(expandedFile), 65536))) {
+            FileChannel channel = zip.getChannel();
+            long position = 0L;
+            for (long[] entry : findDeflatedEntries(channel)) {
+                long offset = entry[0];
+                if ((offset < position) || (offset + entry[1] > channel.size())) {
+                    continue;
+                }
+                byte[] compressed = new byte[(int) entry[1]];
+                zip.seek(offset);
+                zip.readFully(compressed);
+                byte[] content = inflate(compressed, (int) entry[2]);
+                if ((content == null) || (exact && !Arrays.equals(compressed, deflate(content)))) {
+                    continue;
+                }
+
+                writeRaw(zip, position, offset - position, output);
+                output.writeByte(SEGMENT_DEFLATED);
+                output.writeLong(content.length);
+                output.write(content);
+                position = offset + compressed.length;
+            }
+            writeRaw(zip, position, channel.size() - position, output);
+        }
+    }
+
+    private static void writeRaw(RandomAccessFile zip, long position, long length, DataOutputStream output) throws IOException {
+        if (length == 0L) {
+            return;
+        }
+        output.writeByte(SEGMENT_RAW);
+        output.writeLong(length);
+        zip.seek(position);
+        byte[] buffer = new byte[65536];
+        while (length > 0L) {
+            int read = (int) Math.min(length, buffer.length);
+            zip.readFully(buffer, 0, read);
+            output.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    /**
+     * Turns an expanded file back into the zip file it was made from.
+     */
+    static void collapse(File expandedFile, File zipFile) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(expandedFile), 65536));
+             OutputStream output = new BufferedOutputStream(new FileOutputStream(zipFile), 65536)) {
+            long remaining = expandedFile.length();
+            byte[] buffer = new byte[65536];
+            while (remaining > 0L) {
+                int kind = input.readUnsignedByte();
+                long length = input.readLong();
+                remaining -= 9L;
+                if ((length < 0L) || (length > remaining) || ((kind != SEGMENT_RAW) && (kind != SEGMENT_DEFLATED))) {
+                    throw new IOException("Corrupt expanded zip file");
+                }
+                remaining -= length;
+                if (kind == SEGMENT_DEFLATED) {
+                    byte[] content = new byte[(int) length];
+                    input.readFully(content);
+                    output.write(deflate(content));
+                    continue;
+                }
+                while (length > 0L) {
+                    int read = (int) Math.min(length, buffer.length);
+                    input.readFully(buffer, 0, read);
+                    output.write(buffer, 0, read);
+                    length -= read;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the data offset, compressed size and size of every deflated entry, ordered by offset.
+     */
+    private static List<long[]> findDeflatedEntries(FileChannel channel) throws IOException {
+        List<long[]> entries = new ArrayList<>();
+        long length = channel.size();
+        int tail = (int) Math.min(length, 65557L);
+        ByteBuffer end = read(channel, length - tail, tail);
+        int endPosition = -1;
+        for (int i = tail - 22; i >= 0; i--) {
+            if (end.getInt(i) == END_HEADER) {
+                endPosition = i;
+                break;
+            }
+        }
+        if (endPosition < 0) {
+            return entries;
+        }
+
+        long directorySize = end.getInt(endPosition + 12) & 0xFFFFFFFFL;
+        long directoryOffset = end.getInt(endPosition + 16) & 0xFFFFFFFFL;
+        if ((directoryOffset == 0xFFFFFFFFL) || (directoryOffset + directorySize > length)) {
+            return entries;
+        }
+
+        ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+        int position = 0;
+        while ((position + 46 <= directorySize) && (directory.getInt(position) == CENTRAL_HEADER)) {
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+            position += 46 + nameLength + extraLength + commentLength;
+
+            if ((method != ZipEntry.DEFLATED) || (compressedSize >= Integer.MAX_VALUE) || (size >= Integer.MAX_VALUE) || (localOffset + 30 > length)) {
+                continue;
+            }
+            ByteBuffer local = read(channel, localOffset, 30);
+            if (local.getInt(0) != LOCAL_HEADER) {
+                continue;
+            }
+            long dataOffset = localOffset + 30 + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+            entries.add(new long[] { dataOffset, compressedSize, size });
+        }
+
+        Collections.sort(entries, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        return entries;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer;
+    }
+
+    private static byte[] inflate(byte[] compressed, int size) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            // One spare byte tells an entry that inflates to more than its recorded size.
+            byte[] content = new byte[size + 1];
+            int done = 0;
+            while (!inflater.finished() && (done <= size)) {
+                int read = inflater.inflate(content, done, content.length - done);
+                if ((read == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                done += read;
+            }
+            return inflater.finished() && (done == size) ? Arrays.copyOf(content, size) : null;
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 2 + 64);
+            byte[] buffer = new byte[65536];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int readByte(InputStream input) throws IOException {
+        int value = input.read();
+        if (value < 0) {
+            throw new EOFException("Patch is truncated");
+        }
+        return value;
+    }
+
+    private static byte[] readBytes(InputStream input, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        readFully(input, bytes, 0, length);
+        return bytes;
+    }
+
+    private static void readFully(InputStream input, byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = input.read(buffer, offset, length);
+            if (read < 0) {
+                throw new EOFException("Patch is truncated");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+
+    private static long readLong(InputStream input) throws IOException {
+        long value = 0L;
+        int b;
+        do {
+            if ((value >>> 56) != 0L) {
+                throw new IOException("Patch contains an integer that is too large");
+            }
+            b = readByte(input);
+            value = (value << 7) | (b & 0x7F);
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int readInt(InputStream input) throws IOException {
+        long value = readLong(input);
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Patch contains an integer that is too large");
+        }
+        return (int) value;
+    }
+}
@@ -1,18 +1,32 @@
 package net.minecraft.bootstrap;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.math.BigInteger;
 import java.net.BindException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLHandshakeException;
@@ -24,16 +38,42 @@ import javax.net.ssl.SSLHandshakeException;
 public class Downloader implements Runnable
 {
     private static final int MAX_RETRIES = 10;
+    private static final int MAX_PATCH_CHAIN = 16;
+    private static final long SEGMENTED_THRESHOLD = 32L * 1024L * 1024L;
+    private static final int MAX_SEGMENTS = 4;
+    private static final int MAX_SEGMENT_RETRIES = 3;
+    private static final long MAX_BACKOFF = 8000L;
     private final Proxy proxy;
     private final String currentMd5;
     private final File targetFile;
+    private final File baseFile;
+    private final String artifactName;
     private final Controller controller;
     private final URL url;
     private final URL urlhash;
     private String serverMd5;
+    private MessageDigest digest;
+    private long bytesWritten;
+    private String resumeValidator;
+    private String responseEtag;
+    private String responseLastModified;
+    private boolean patchAttempted;
+    private volatile String verifiedMd5;
+    private long expectedSize = -1L;
+    private StreamExtractor streamExtractor;
+    private URL mirrorUrl;
+    private List<URL> sources;
+    private MirrorStats mirrorStats;
+    private long hedgeDelay = 2000L;
+    private File patchBase;
     private Bootstrap bootstrap;
     
     public Downloader(Controller controller, Bootstrap bootstrap, Proxy proxy, String currentMd5, File targetFile, String FileURL)
+    {
+        this(controller, bootstrap, proxy, currentMd5, null, targetFile, FileURL);
+    }
+
+    public Downloader(Controller controller, Bootstrap bootstrap, Proxy proxy, String currentMd5, File baseFile, File targetFile, String FileURL)
     {
         this.controller = controller;
         this.bootstrap = bootstrap;
@@ -41,29 +81,132 @@ public class Downloader implements Runnable
         this.currentMd5 = currentMd5;
         this.serverMd5 = "-";
         this.targetFile = targetFile;
+        this.baseFile = baseFile;
+        String name = targetFile.getName();
+        this.artifactName = name.replaceFirst("\\.(new|prefetch)$", "");
         try {
             this.url = new URL(FileURL);
             this.urlhash = new URL(FileURL + ".hash");
         } catch (MalformedURLException ex) {
             throw new FatalBootstrapError("Can't reach download server");
         }
+        this.sources = new ArrayList<>();
+        this.sources.add(url);
     }
     
+    /**
+     * Uses a hash that is already known, for example from the update manifest, instead of asking for the .hash file.
+     */
+    public void setServerMd5(String serverMd5) {
+        if (serverMd5 != null) {
+            this.serverMd5 = serverMd5;
+        }
+    }
+
+    /**
+     * Size published by the update manifest, used to skip probing for a segmented download of small files.
+     */
+    public void setExpectedSize(long expectedSize) {
+        this.expectedSize = expectedSize;
+    }
+
+    /**
+     * Extracts the archive while it downloads. Only a download that streams the whole file in one
+     * go feeds the extractor, every other path leaves it unused.
+     */
+    public void setStreamExtractor(StreamExtractor streamExtractor) {
+        this.streamExtractor = streamExtractor;
+    }
+
+    /**
+     * Tries a mirror on the local network before the origin. What comes from the mirror is checked
+     * against the hash of the origin, so it is only used when that hash is known.
+     */
+    public void setMirrorUrl(String mirrorUrl) {
+        try {
+            this.mirrorUrl = mirrorUrl == null ? null : new URL(mirrorUrl);
+        } catch (MalformedURLException e) {
+            log(new StringBuilder().append("Ignoring invalid mirror url: ").append(mirrorUrl).toString());
+            this.mirrorUrl = null;
+        }
+    }
+
+    /**
+     * Other servers carrying the same file. The .hash file, patches and conditional requests keep
+     * going to the url this downloader was created with, the file itself comes from whichever
+     * source is expected to be the quickest.
+     */
+    public void setMirrors(List<String> mirrors) {
+        for (String mirror : mirrors) {
+            try {
+                URL source = new URL(mirror);
+                if (!sources.contains(source)) {
+                    sources.add(source);
+                }
+            } catch (MalformedURLException e) {
+                log(new StringBuilder().append("Ignoring invalid mirror url: ").append(mirror).toString());
+            }
+        }
+    }
+
+    /**
+     * Ranks the sources and collects their latency, throughput and failures. Without it the sources are tried in order.
+     */
+    public void setMirrorStats(MirrorStats mirrorStats) {
+        this.mirrorStats = mirrorStats;
+    }
+
+    /**
+     * @param hedgeDelay milliseconds after which a second source is asked for the same file
+     */
+    public void setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    /**
+     * @param patchBase the file currentMd5 was computed from, when that is not the base file, such as a staged .new
+     */
+    public void setPatchBase(File patchBase) {
+        this.patchBase = patchBase;
+    }
+
+    /**
+     * @return the md5 of the downloaded file once the download succeeded, otherwise null
+     */
+    public String getVerifiedMd5() {
+        return verifiedMd5;
+    }
+
     @Override
     public void run()
     {
+        if (isNotModified()) {
+            controller.foundUpdate.set(false);
+            controller.foundUpdateLatch.countDown();
+            log("No update found.");
+            return;
+        }
+
         int retries = 0;
         while (true) {
             retries++; if (retries > MAX_RETRIES) break;
+            if ((retries > 1) && (!backOff(retries))) break;
             
             Scanner s = null;
             // Test code, manual hash
             try {
                 if ("-".equals(serverMd5))
                 {
-                    s = new Scanner(urlhash.openStream());
+                    long startCheck = System.nanoTime();
+                    // Through the proxy and the shared keep-alive connections, like the download itself
+                    HttpURLConnection connection = getConnection(urlhash);
+                    connection.setConnectTimeout(30000);
+                    connection.setReadTimeout(10000);
+                    connect(connection);
+                    s = new Scanner(connection.getInputStream());
                     // read from your scanner            
                     serverMd5 = s.nextLine();
+                    bootstrap.getTrace().record(artifactName, "check", startCheck, serverMd5.length());
                 }
             }
             catch(Exception e) {
@@ -83,8 +226,36 @@ public class Downloader implements Runnable
                 controller.foundUpdate.set(true);
                 controller.foundUpdateLatch.countDown();
             }
+            if (!patchAttempted) {
+                patchAttempted = true;
+                if (linkFromStore()) {
+                    controller.hasDownloadedLatch.countDown();
+                    return;
+                }
+                if (applyPatches()) {
+                    controller.hasDownloadedLatch.countDown();
+                    return;
+                }
+                if (downloadFromMirror()) {
+                    controller.hasDownloadedLatch.countDown();
+                    return;
+                }
+                if (mirrorStats != null) {
+                    sources = mirrorStats.rank(sources, expectedSize);
+                }
+                if (downloadHedged()) {
+                    controller.hasDownloadedLatch.countDown();
+                    return;
+                }
+                if (downloadSegmented(sources.get(0))) {
+                    controller.hasDownloadedLatch.countDown();
+                    return;
+                }
+            }
+            // Every retry moves on to the next source
+            URL source = sources.get((retries - 1) % sources.size());
             try {
-                HttpsURLConnection connection = getConnection(url);
+                HttpURLConnection connection = getConnection(source);
 
                 connection.setUseCaches(false);
                 connection.setDefaultUseCaches(false);
@@ -94,16 +265,49 @@ public class Downloader implements Runnable
                 connection.setConnectTimeout(30000);
                 connection.setReadTimeout(10000);
 
-                log(new StringBuilder().append("Downloading: ").append(url.toString()).append(retries > 1 ? String.format(" (try %d/%d)", new Object[] { Integer.valueOf(retries), Integer.valueOf(10) }) : "").toString());
+                boolean resuming = (bytesWritten > 0L) && (resumeValidator != null) && (targetFile.isFile());
+                if (resuming) {
+                    connection.setRequestProperty("Range", "bytes=" + bytesWritten + "-");
+                    connection.setRequestProperty("If-Range", resumeValidator);
+                }
+
+                log(new StringBuilder().append("Downloading: ").append(source.toString()).append(retries > 1 ? String.format(" (try %d/%d)", new Object[] { Integer.valueOf(retries), Integer.valueOf(10) }) : "").toString());
                 long start = System.nanoTime();
-                connection.connect();
+                connect(connection);
                 long elapsed = System.nanoTime() - start;
                 log(new StringBuilder().append("Got reply in: ").append(elapsed / 1000000L).append("ms").toString());
 
+                boolean append = resuming && (connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL);
+                if (append) {
+                    if (getRangeStart(connection) != bytesWritten) {
+                        resetProgress();
+                        throw new IOException("Server answered with an unexpected range: " + connection.getHeaderField("Content-Range"));
+                    }
+                    log(new StringBuilder().append("Resuming at ").append(bytesWritten).append(" bytes").toString());
+                    truncate(targetFile, bytesWritten);
+                } else {
+                    resetProgress();
+                    resumeValidator = getValidator(connection);
+                    // Validators of another server mean nothing to the conditional request on the next start
+                    responseEtag = source.equals(url) ? connection.getHeaderField("ETag") : null;
+                    responseLastModified = source.equals(url) ? connection.getHeaderField("Last-Modified") : null;
+                }
+
+                if (streamExtractor != null) {
+                    if ((!append) && (!streamExtractor.isStarted())) {
+                        streamExtractor.start(targetFile.getName());
+                    } else {
+                        // A retry would have to replay the archive from the start
+                        streamExtractor.abort();
+                    }
+                }
+
                 InputStream inputStream = connection.getInputStream();
-                FileOutputStream outputStream = new FileOutputStream(targetFile);
+                FileOutputStream outputStream = new FileOutputStream(targetFile, append);
 
-                MessageDigest digest = MessageDigest.getInstance("MD5");
+                if (digest == null) {
+                    digest = MessageDigest.getInstance("MD5");
+                }
 
                 long startDownload = System.nanoTime();
                 long bytesRead = 0L;
@@ -111,31 +315,53 @@ public class Downloader implements Runnable
                 try {
                   int read = inputStream.read(buffer);
                   while (read >= 1) {
-                    bytesRead += read;
-                    digest.update(buffer, 0, read);
                     outputStream.write(buffer, 0, read);
+                    digest.update(buffer, 0, read);
+                    if (streamExtractor != null) {
+                      streamExtractor.write(buffer, 0, read);
+                    }
+                    bytesRead += read;
+                    bytesWritten += read;
                     read = inputStream.read(buffer);
                   }
                 } finally {
                   inputStream.close();
                   outputStream.close();
                 }
-                long elapsedDownload = System.nanoTime() - startDownload;
+                if (streamExtractor != null) {
+                    streamExtractor.finish();
+                }
+                long endDownload = System.nanoTime();
+                long elapsedDownload = endDownload - startDownload;
+                bootstrap.getTrace().record(artifactName, "transfer", startDownload, endDownload, bytesRead);
 
                 float elapsedSeconds = (float)(1L + elapsedDownload) / 1.0E+009F;
                 float kbRead = (float)bytesRead / 1024.0F;
                 log(String.format("Downloaded %.1fkb in %ds at %.1fkb/s", new Object[] { Float.valueOf(kbRead), Integer.valueOf((int)elapsedSeconds), Float.valueOf(kbRead / elapsedSeconds) }));
 
+                // The digest was fed during the transfer, only finishing it is left
+                long startVerify = System.nanoTime();
                 String md5sum = String.format("%1$032x", new Object[] { new BigInteger(1, digest.digest()) });
+                bootstrap.getTrace().record(artifactName, "verify", startVerify, 0L);
+                resetProgress();
                 if ((!serverMd5.contains("-")) && (!serverMd5.equalsIgnoreCase(md5sum))) {
                   log("After downloading, the MD5 hash didn't match. Retrying");
+                  if (streamExtractor != null) {
+                    streamExtractor.abort();
+                  }
                 }
                 else { 
+                  saveValidators(md5sum);
+                  addToStore(md5sum);
+                  verifiedMd5 = md5sum;
                   controller.hasDownloadedLatch.countDown();
                   return;
                 }
             } catch (IOException | NoSuchAlgorithmException e) {
                 log(new StringBuilder().append("Exception: ").append(e.toString()).toString());
+                if (mirrorStats != null) {
+                    mirrorStats.recordFailure(source);
+                }
                 suggestHelp(e);
             }
         }
@@ -143,6 +369,441 @@ public class Downloader implements Runnable
         log("Unable to download remote file. Check your internet connection/proxy settings.");
     }
     
+    /**
+     * Asks the server whether the artifact changed since we downloaded it, using the validators
+     * saved with it. Servers without validators fall through to the .hash file.
+     */
+    private boolean isNotModified() {
+        if ((baseFile == null) || (currentMd5 == null) || (!"-".equals(serverMd5))) {
+            return false;
+        }
+        Properties validators = loadValidators();
+        String etag = validators.getProperty("etag");
+        String lastModified = validators.getProperty("lastModified");
+        if ((!currentMd5.equalsIgnoreCase(validators.getProperty("md5"))) || ((etag == null) && (lastModified == null))) {
+            return false;
+        }
+
+        long startCheck = System.nanoTime();
+        try {
+            HttpURLConnection connection = getConnection(url);
+            connection.setUseCaches(false);
+            connection.setRequestMethod("HEAD");
+            connection.setConnectTimeout(30000);
+            connection.setReadTimeout(10000);
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", lastModified);
+            }
+            connect(connection);
+
+            int code = connection.getResponseCode();
+            bootstrap.getTrace().record(artifactName, "check", startCheck, 0L);
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return true;
+            }
+            // Some servers ignore conditional HEAD requests but still report the same tag
+            return (code == HttpURLConnection.HTTP_OK) && (etag != null) && (etag.equals(connection.getHeaderField("ETag")));
+        } catch (IOException e) {
+            log(new StringBuilder().append("Conditional request failed: ").append(e.toString()).toString());
+            return false;
+        }
+    }
+
+    private File getValidatorsFile() {
+        return new File(baseFile.getPath() + ".validators");
+    }
+
+    private Properties loadValidators() {
+        Properties validators = new Properties();
+        File file = getValidatorsFile();
+        if (file.isFile()) {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                validators.load(inputStream);
+            } catch (IOException ignored) {
+            }
+        }
+        return validators;
+    }
+
+    private void saveValidators(String md5sum) {
+        if (baseFile == null) {
+            return;
+        }
+        File file = getValidatorsFile();
+        if ((responseEtag == null) && (responseLastModified == null)) {
+            file.delete();
+            return;
+        }
+
+        Properties validators = new Properties();
+        validators.setProperty("md5", md5sum);
+        if (responseEtag != null) {
+            validators.setProperty("etag", responseEtag);
+        }
+        if (responseLastModified != null) {
+            validators.setProperty("lastModified", responseLastModified);
+        }
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            validators.store(outputStream, "Validators for " + url);
+        } catch (IOException e) {
+            file.delete();
+        }
+    }
+
+    private boolean linkFromStore() {
+        ArtifactStore store = bootstrap.getArtifactStore();
+        if ((store == null) || (serverMd5.contains("-"))) {
+            return false;
+        }
+        try {
+            if (store.linkTo(serverMd5, targetFile)) {
+                log(new StringBuilder().append("Found ").append(serverMd5).append(" in shared store").toString());
+                verifiedMd5 = serverMd5;
+                return true;
+            }
+        } catch (IOException e) {
+            log(new StringBuilder().append("Unable to use shared store: ").append(e.toString()).toString());
+        }
+        return false;
+    }
+
+    private void addToStore(String md5sum) {
+        ArtifactStore store = bootstrap.getArtifactStore();
+        if (store == null) {
+            return;
+        }
+        try {
+            store.put(targetFile, md5sum);
+        } catch (IOException e) {
+            log(new StringBuilder().append("Unable to add to shared store: ").append(e.toString()).toString());
+        }
+    }
+
+    private boolean applyPatches() {
+        File base = patchBase != null ? patchBase : baseFile;
+        if ((base == null) || (currentMd5 == null) || (serverMd5.contains("-")) || (!base.isFile())) {
+            return false;
+        }
+
+        File[] steps = { new File(targetFile.getPath() + ".delta0"), new File(targetFile.getPath() + ".delta1") };
+        String baseMd5 = currentMd5;
+        try {
+            for (int step = 0; step < MAX_PATCH_CHAIN; step++) {
+                URL patchUrl = new URL(url.toString() + "." + baseMd5.toLowerCase() + ".patch");
+                File output = steps[step % 2];
+
+                HttpURLConnection connection = getConnection(patchUrl);
+                connection.setConnectTimeout(30000);
+                connection.setReadTimeout(10000);
+                connect(connection);
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    discard(connection);
+                    log(step == 0 ? "No patch available, downloading full file" : "Patch chain is incomplete, downloading full file");
+                    return false;
+                }
+
+                log(new StringBuilder().append("Applying patch: ").append(patchUrl.toString()).toString());
+                long startPatch = System.nanoTime();
+                try (InputStream inputStream = connection.getInputStream()) {
+                    DeltaPatcher.apply(base, inputStream, output);
+                }
+                bootstrap.getTrace().record(artifactName, "patch", startPatch, output.length());
+
+                base = output;
+                baseMd5 = Bootstrap.computeMd5(output);
+                if (baseMd5 == null) {
+                    return false;
+                }
+                if (serverMd5.equalsIgnoreCase(baseMd5)) {
+                    if (targetFile.exists()) {
+                        targetFile.delete();
+                    }
+                    if (!output.renameTo(targetFile)) {
+                        Bootstrap.copyFile(output, targetFile);
+                    }
+                    log(new StringBuilder().append("Patched to ").append(serverMd5).append(" in ").append(step + 1).append(step == 0 ? " step" : " steps").toString());
+                    addToStore(serverMd5);
+                    verifiedMd5 = serverMd5;
+                    return true;
+                }
+            }
+            log("Patch chain is too long, downloading full file");
+        } catch (IOException e) {
+            log(new StringBuilder().append("Unable to patch, downloading full file: ").append(e.toString()).toString());
+        } finally {
+            steps[0].delete();
+            steps[1].delete();
+        }
+        return false;
+    }
+
+    /**
+     * Downloads the whole file from the mirror in one stream, feeding the stream extractor like
+     * the download from the origin does. A miss or a hash mismatch falls back to the origin.
+     */
+    private boolean downloadFromMirror() {
+        if ((mirrorUrl == null) || (serverMd5.contains("-"))) {
+            return false;
+        }
+
+        boolean extracting = (streamExtractor != null) && (!streamExtractor.isStarted());
+        try {
+            // The mirror is on the local network, the proxy is only meant for the origin
+            HttpURLConnection connection = (HttpURLConnection) mirrorUrl.openConnection(Proxy.NO_PROXY);
+            connection.setUseCaches(false);
+            connection.setConnectTimeout(2000);
+            connection.setReadTimeout(10000);
+            connect(connection);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                log(new StringBuilder().append("Not on mirror: ").append(mirrorUrl.toString()).toString());
+                return false;
+            }
+
+            log(new StringBuilder().append("Downloading from mirror: ").append(mirrorUrl.toString()).toString());
+            if (extracting) {
+                streamExtractor.start(targetFile.getName());
+            }
+            MessageDigest mirrorDigest = MessageDigest.getInstance("MD5");
+            long startDownload = System.nanoTime();
+            long bytesRead = 0L;
+            byte[] buffer = new byte[65536];
+            try (InputStream inputStream = connection.getInputStream();
+                 FileOutputStream outputStream = new FileOutputStream(targetFile)) {
+                int read;
+                while ((read = inputStream.read(buffer)) >= 0) {
+                    outputStream.write(buffer, 0, read);
+                    mirrorDigest.update(buffer, 0, read);
+                    if (extracting) {
+                        streamExtractor.write(buffer, 0, read);
+                    }
+                    bytesRead += read;
+                }
+            }
+            if (extracting) {
+                streamExtractor.finish();
+            }
+            bootstrap.getTrace().record(artifactName, "mirror", startDownload, bytesRead);
+
+            String md5sum = String.format("%1$032x", new Object[] { new BigInteger(1, mirrorDigest.digest()) });
+            if (!serverMd5.equalsIgnoreCase(md5sum)) {
+                log("Mirror sent a file with the wrong MD5 hash, downloading from origin");
+                targetFile.delete();
+                if (extracting) {
+                    streamExtractor.abort();
+                }
+                return false;
+            }
+            log(String.format("Downloaded %.1fkb from mirror in %dms", new Object[] { Float.valueOf((float)bytesRead / 1024.0F), Long.valueOf((System.nanoTime() - startDownload) / 1000000L) }));
+            addToStore(md5sum);
+            verifiedMd5 = md5sum;
+            return true;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log(new StringBuilder().append("Mirror failed, downloading from origin: ").append(e.toString()).toString());
+            targetFile.delete();
+            if (extracting) {
+                streamExtractor.abort();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Waits a little longer before every retry, so a server that is struggling gets some air.
+     *
+     * @return false when interrupted
+     */
+    private boolean backOff(int retries) {
+        long delay = Math.min(MAX_BACKOFF, 250L << Math.min(retries - 2, 5));
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Races the two best ranked sources when there is more than one, see HedgedDownload.
+     */
+    private boolean downloadHedged() {
+        if ((sources.size() < 2) || (serverMd5.contains("-"))) {
+            return false;
+        }
+        StreamExtractor extractor = (streamExtractor != null) && (!streamExtractor.isStarted()) ? streamExtractor : null;
+        if (!new HedgedDownload(bootstrap, proxy, sources, targetFile, artifactName, serverMd5, hedgeDelay, mirrorStats, extractor).run()) {
+            log("Every source failed, retrying one by one");
+            return false;
+        }
+        addToStore(serverMd5);
+        verifiedMd5 = serverMd5;
+        return true;
+    }
+
+    /**
+     * Downloads big files over several connections at once, each writing its own range of the
+     * preallocated target file. Only used when the server accepts range requests, and not while
+     * extracting during the download: that needs the bytes in order, and on a fresh install
+     * overlapping the extraction saves more than the extra connections.
+     */
+    private boolean downloadSegmented(final URL source) {
+        if ((expectedSize >= 0L) && (expectedSize < SEGMENTED_THRESHOLD)) {
+            return false;
+        }
+        if ((streamExtractor != null) && (!streamExtractor.isStarted())) {
+            log("Extracting while downloading, using a single connection");
+            return false;
+        }
+
+        final long length;
+        final String validator;
+        try {
+            HttpURLConnection connection = getConnection(source);
+            connection.setUseCaches(false);
+            connection.setRequestMethod("HEAD");
+            connection.setConnectTimeout(30000);
+            connection.setReadTimeout(10000);
+            connect(connection);
+            if ((connection.getResponseCode() != HttpURLConnection.HTTP_OK) || (!"bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges")))) {
+                return false;
+            }
+            length = Long.parseLong(connection.getHeaderField("Content-Length"));
+            validator = getValidator(connection);
+            responseEtag = source.equals(url) ? connection.getHeaderField("ETag") : null;
+            responseLastModified = source.equals(url) ? connection.getHeaderField("Last-Modified") : null;
+        } catch (IOException | NumberFormatException e) {
+            return false;
+        }
+        if ((length < SEGMENTED_THRESHOLD) || (validator == null)) {
+            return false;
+        }
+
+        int segments = MAX_SEGMENTS;
+        log(new StringBuilder().append("Downloading: ").append(source.toString()).append(" in ").append(segments).append(" segments").toString());
+        long startDownload = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(segments);
+        try (RandomAccessFile file = new RandomAccessFile(targetFile, "rw")) {
+            file.setLength(length);
+            final FileChannel channel = file.getChannel();
+
+            List<Future<Void>> results = new ArrayList<>();
+            long segmentSize = (length + segments - 1) / segments;
+            for (int i = 0; i < segments; i++) {
+                final long from = i * segmentSize;
+                final long to = Math.min(length, from + segmentSize) - 1L;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        downloadSegment(source, channel, from, to, validator);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            log(new StringBuilder().append("Segmented download failed, falling back to a single connection: ").append(e instanceof ExecutionException ? e.getCause() : e).toString());
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long endDownload = System.nanoTime();
+        long elapsedDownload = endDownload - startDownload;
+        bootstrap.getTrace().record(artifactName, "transfer", startDownload, endDownload, length);
+        float elapsedSeconds = (float)(1L + elapsedDownload) / 1.0E+009F;
+        float kbRead = (float)length / 1024.0F;
+        log(String.format("Downloaded %.1fkb in %ds at %.1fkb/s", new Object[] { Float.valueOf(kbRead), Integer.valueOf((int)elapsedSeconds), Float.valueOf(kbRead / elapsedSeconds) }));
+
+        long startVerify = System.nanoTime();
+        String md5sum = Bootstrap.computeMd5(targetFile);
+        bootstrap.getTrace().record(artifactName, "verify", startVerify, length);
+        if ((md5sum == null) || ((!serverMd5.contains("-")) && (!serverMd5.equalsIgnoreCase(md5sum)))) {
+            log("After downloading, the MD5 hash didn't match. Retrying");
+            return false;
+        }
+        saveValidators(md5sum);
+        addToStore(md5sum);
+        verifiedMd5 = md5sum;
+        return true;
+    }
+
+    private void downloadSegment(URL source, FileChannel channel, long from, long to, String validator) throws IOException {
+        long position = from;
+        byte[] buffer = new byte[65536];
+        for (int attempt = 1; ; attempt++) {
+            try {
+                HttpURLConnection connection = getConnection(source);
+                connection.setUseCaches(false);
+                connection.setConnectTimeout(30000);
+                connection.setReadTimeout(10000);
+                connection.setRequestProperty("Range", "bytes=" + position + "-" + to);
+                connection.setRequestProperty("If-Range", validator);
+                connect(connection);
+                if ((connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) || (getRangeStart(connection) != position)) {
+                    throw new IOException("Server didn't honour the range request");
+                }
+
+                try (InputStream inputStream = connection.getInputStream()) {
+                    int read;
+                    while ((position <= to) && ((read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, to - position + 1L))) >= 0)) {
+                        ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                        while (data.hasRemaining()) {
+                            position += channel.write(data, position);
+                        }
+                    }
+                }
+                if (position <= to) {
+                    throw new IOException("Segment ended early at " + position);
+                }
+                return;
+            } catch (IOException e) {
+                if (attempt >= MAX_SEGMENT_RETRIES) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void resetProgress() {
+        bytesWritten = 0L;
+        resumeValidator = null;
+        if (digest != null) {
+            digest.reset();
+        }
+    }
+
+    private static String getValidator(HttpURLConnection connection) {
+        String etag = connection.getHeaderField("ETag");
+        if ((etag != null) && (!etag.startsWith("W/"))) {
+            return etag;
+        }
+        // If-Range only accepts strong validators, so fall back to the modification date
+        return connection.getHeaderField("Last-Modified");
+    }
+
+    private static long getRangeStart(HttpURLConnection connection) {
+        String range = connection.getHeaderField("Content-Range");
+        if ((range == null) || (!range.startsWith("bytes "))) {
+            return -1L;
+        }
+        int dash = range.indexOf('-');
+        try {
+            return Long.parseLong(range.substring(6, dash).trim());
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            return -1L;
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(length);
+        }
+    }
+
     public void suggestHelp(Throwable t) {
         if ((t instanceof BindException))
             log("Recognized exception: the likely cause is a broken ipv4/6 stack. Check your TCP/IP settings.");
@@ -155,8 +816,59 @@ public class Downloader implements Runnable
         bootstrap.println(str);
     }
 
-    public HttpsURLConnection getConnection(URL url) throws IOException {
-        return (HttpsURLConnection)url.openConnection(proxy);
+    public HttpURLConnection getConnection(URL url) throws IOException {
+        return openConnection(url, proxy);
+    }
+
+    /**
+     * Opens every connection to the origin the same way. The keep-alive cache only hands out an
+     * idle connection again when the proxy and the socket factory are the same, so anything that
+     * talks to the origin should come through here to share the already finished handshakes.
+     */
+    public static HttpURLConnection openConnection(URL url, Proxy proxy) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection(proxy);
+        if (connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection)connection).setSSLSocketFactory(TimingSSLSocketFactory.getInstance());
+        }
+        return connection;
+    }
+
+    /**
+     * Reads what is left of an error response, which hands the connection back to the keep-alive
+     * cache instead of closing it.
+     */
+    private static void discard(HttpURLConnection connection) {
+        InputStream inputStream = connection.getErrorStream();
+        if (inputStream == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[4096];
+            while (inputStream.read(buffer) >= 0) {
+            }
+        } catch (IOException ignored) {
+        } finally {
+            Bootstrap.closeSilently(inputStream);
+        }
+    }
+
+    /**
+     * Connects and records the TCP connect and the TLS handshake as separate phases.
+     * Both stay close to zero when a kept alive connection was reused.
+     */
+    private void connect(HttpURLConnection connection) throws IOException {
+        TimingSSLSocketFactory socketFactory = TimingSSLSocketFactory.getInstance();
+        socketFactory.takeHandshakeStart();
+        long start = System.nanoTime();
+        connection.connect();
+        long end = System.nanoTime();
+        long handshakeStart = socketFactory.takeHandshakeStart();
+        if (handshakeStart > start) {
+            bootstrap.getTrace().record(artifactName, "connect", start, handshakeStart, 0L);
+            bootstrap.getTrace().record(artifactName, "tls", handshakeStart, end, 0L);
+        } else {
+            bootstrap.getTrace().record(artifactName, "connect", start, end, 0L);
+        }
     }
 
     public static class Controller
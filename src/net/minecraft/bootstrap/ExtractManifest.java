@@ -0,0 +1,97 @@
+package net.minecraft.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the CRC and size of every file extracted from an archive, so
+ * the next update only has to touch the entries that changed.
+ *
+ * @author Branzel
+ */
+public class ExtractManifest
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    public static ExtractManifest load(File file) {
+        ExtractManifest manifest = new ExtractManifest();
+        if (!file.isFile()) {
+            return manifest;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length == 3) {
+                    manifest.put(parts[2], Long.parseLong(parts[0], 16), Long.parseLong(parts[1]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // A broken manifest only costs us a full extraction
+            return new ExtractManifest();
+        }
+        return manifest;
+    }
+
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF_8))) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writer.write(Long.toHexString(entry.getValue().crc));
+                writer.write('\t');
+                writer.write(Long.toString(entry.getValue().size));
+                writer.write('\t');
+                writer.write(entry.getKey());
+                writer.write('\n');
+            }
+        }
+        if ((file.exists()) && (!file.delete())) {
+            throw new IOException("Unable to replace " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to rename " + temp + " to " + file);
+        }
+    }
+
+    public void put(String name, long crc, long size) {
+        entries.put(name, new Entry(crc, size));
+    }
+
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    public Iterable<String> names() {
+        return entries.keySet();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public static class Entry
+    {
+        public final long crc;
+        public final long size;
+
+        public Entry(long crc, long size) {
+            this.crc = crc;
+            this.size = size;
+        }
+
+        public boolean matches(long crc, long size) {
+            return (this.crc == crc) && (this.size == size);
+        }
+    }
+}
\ No newline at end of file
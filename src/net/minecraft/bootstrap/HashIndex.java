@@ -0,0 +1,138 @@
+package net.minecraft.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the md5 of files we hashed or downloaded, together with their
+ * size, modification time and file key, so unchanged files don't have to be
+ * read again on the next start.
+ *
+ * @author Branzel
+ */
+public class HashIndex
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final File indexFile;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded;
+
+    public HashIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * @return the remembered hash, or null when the file changed since it was recorded
+     */
+    public synchronized String get(File file) {
+        load();
+        Entry entry = entries.get(file.getAbsolutePath());
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return entry.matches(describe(file)) ? entry.hash : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public synchronized void put(File file, String hash) {
+        load();
+        try {
+            Entry entry = describe(file);
+            entry.hash = hash;
+            entries.put(file.getAbsolutePath(), entry);
+            save();
+        } catch (IOException e) {
+            entries.remove(file.getAbsolutePath());
+        }
+    }
+
+    public synchronized void remove(File file) {
+        load();
+        if (entries.remove(file.getAbsolutePath()) != null) {
+            try {
+                save();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static Entry describe(File file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        Entry entry = new Entry();
+        entry.size = attributes.size();
+        entry.modified = attributes.lastModifiedTime().toMillis();
+        entry.fileKey = attributes.fileKey() == null ? "-" : attributes.fileKey().toString();
+        return entry;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!indexFile.isFile()) {
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 5);
+                if (parts.length != 5) {
+                    continue;
+                }
+                Entry entry = new Entry();
+                entry.hash = parts[0];
+                entry.size = Long.parseLong(parts[1]);
+                entry.modified = Long.parseLong(parts[2]);
+                entry.fileKey = parts[3];
+                entries.put(parts[4], entry);
+            }
+        } catch (IOException | NumberFormatException e) {
+            entries.clear();
+        }
+    }
+
+    private void save() throws IOException {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF_8))) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(value.hash + "\t" + value.size + "\t" + value.modified + "\t" + value.fileKey + "\t" + entry.getKey());
+                writer.write('\n');
+            }
+        }
+        if ((indexFile.exists()) && (!indexFile.delete())) {
+            throw new IOException("Unable to replace " + indexFile);
+        }
+        if (!temp.renameTo(indexFile)) {
+            throw new IOException("Unable to rename " + temp + " to " + indexFile);
+        }
+    }
+
+    private static class Entry
+    {
+        private String hash;
+        private long size;
+        private long modified;
+        private String fileKey;
+
+        private boolean matches(Entry other) {
+            return (size == other.size) && (modified == other.modified) && (fileKey.equals(other.fileKey));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,253 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Downloads a file from the best ranked source, and when that hasn't finished after the hedge
+ * delay and doesn't look like it is about to, from the second best as well. Whichever delivers
+ * a file with the expected hash first wins and the other one is cancelled.
+ *
+ * @author Branzel
+ */
+class HedgedDownload
+{
+    private final Bootstrap bootstrap;
+    private final Proxy proxy;
+    private final List<URL> sources;
+    private final File targetFile;
+    private final String artifactName;
+    private final String md5;
+    private final long hedgeDelay;
+    private final MirrorStats stats;
+    private final StreamExtractor streamExtractor;
+
+    /**
+     * @param artifactName the name the transfer is recorded under in the startup trace
+     * @param stats receives the measurements of every source, may be null
+     * @param streamExtractor fed by the first source only, aborted when another source wins, may be null
+     */
+    HedgedDownload(Bootstrap bootstrap, Proxy proxy, List<URL> sources, File targetFile, String artifactName, String md5, long hedgeDelay, MirrorStats stats, StreamExtractor streamExtractor) {
+        this.bootstrap = bootstrap;
+        this.proxy = proxy;
+        this.sources = sources;
+        this.targetFile = targetFile;
+        this.artifactName = artifactName;
+        this.md5 = md5;
+        this.hedgeDelay = hedgeDelay;
+        this.stats = stats;
+        this.streamExtractor = streamExtractor;
+    }
+
+    /**
+     * @return true when targetFile holds the verified download
+     */
+    public boolean run() {
+        Racer first = new Racer(sources.get(0), new File(targetFile.getPath() + ".part0"), streamExtractor);
+        Racer second = null;
+        first.start();
+        try {
+            synchronized (this) {
+                long hedgeAt = System.nanoTime() + (hedgeDelay * 1000000L);
+                long wait;
+                while ((!first.done) && ((wait = hedgeAt - System.nanoTime()) > 0L)) {
+                    wait(wait / 1000000L, (int) (wait % 1000000L));
+                }
+            }
+            if ((sources.size() > 1) && ((!first.done) ? first.isWorthHedging() : !first.succeeded)) {
+                bootstrap.println(new StringBuilder().append("Hedging download of ").append(targetFile.getName()).append(" with ").append(sources.get(1)).toString());
+                second = new Racer(sources.get(1), new File(targetFile.getPath() + ".part1"), null);
+                second.start();
+            }
+
+            Racer winner = null;
+            synchronized (this) {
+                while (winner == null) {
+                    if (first.succeeded) {
+                        winner = first;
+                    } else if ((second != null) && (second.succeeded)) {
+                        winner = second;
+                    } else if ((first.done) && ((second == null) || (second.done))) {
+                        break;
+                    } else {
+                        wait();
+                    }
+                }
+            }
+
+            if (winner != first) {
+                first.cancel();
+            }
+            if ((second != null) && (winner != second)) {
+                second.cancel();
+            }
+            if ((winner != first) && (streamExtractor != null)) {
+                if (winner != null) {
+                    bootstrap.println(new StringBuilder().append(winner.url).append(" was faster, extracting ").append(targetFile.getName()).append(" after the download").toString());
+                }
+                streamExtractor.abort();
+            }
+            if (winner == null) {
+                return false;
+            }
+
+            bootstrap.println(new StringBuilder().append("Downloaded ").append(targetFile.getName()).append(" from ").append(winner.url).toString());
+            if (targetFile.exists()) {
+                targetFile.delete();
+            }
+            if (!winner.file.renameTo(targetFile)) {
+                Bootstrap.copyFile(winner.file, targetFile);
+                winner.file.delete();
+            }
+            return true;
+        } catch (InterruptedException | IOException e) {
+            first.cancel();
+            if (second != null) {
+                second.cancel();
+            }
+            if (streamExtractor != null) {
+                streamExtractor.abort();
+            }
+            return false;
+        }
+    }
+
+    private synchronized void racerDone() {
+        notifyAll();
+    }
+
+    /**
+     * Downloads from one source into its own file. A cancelled racer isn't waited for, it notices
+     * on its next read or read timeout and removes its file itself.
+     */
+    private class Racer implements Runnable
+    {
+        private final URL url;
+        private final File file;
+        private final StreamExtractor extractor;
+        private final Thread thread;
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile boolean succeeded;
+        private volatile long length = -1L;
+        private volatile long bytesRead;
+        private volatile long startTransfer;
+
+        Racer(URL url, File file, StreamExtractor extractor) {
+            this.url = url;
+            this.file = file;
+            this.extractor = extractor;
+            thread = new Thread(this, "Download of " + targetFile.getName() + " from " + url.getHost());
+            thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void cancel() {
+            synchronized (HedgedDownload.this) {
+                cancelled = true;
+                if (succeeded) {
+                    file.delete();
+                }
+            }
+        }
+
+        /**
+         * @return false when the transfer is expected to end within another hedge delay anyway
+         */
+        boolean isWorthHedging() {
+            long read = bytesRead;
+            long total = length;
+            if ((read <= 0L) || (total <= 0L)) {
+                return true;
+            }
+            long elapsed = System.nanoTime() - startTransfer;
+            long remaining = (long) ((double) elapsed * (total - read) / read);
+            return remaining > hedgeDelay * 1000000L;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long start = System.nanoTime();
+                HttpURLConnection current = Downloader.openConnection(url, proxy);
+                current.setUseCaches(false);
+                current.setConnectTimeout(30000);
+                current.setReadTimeout(10000);
+                if (current.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Server answered " + current.getResponseCode());
+                }
+                if (stats != null) {
+                    stats.recordLatency(url, System.nanoTime() - start);
+                }
+                length = current.getContentLengthLong();
+
+                if (extractor != null) {
+                    extractor.start(targetFile.getName());
+                }
+                MessageDigest digest = MessageDigest.getInstance("MD5");
+                byte[] buffer = new byte[65536];
+                startTransfer = System.nanoTime();
+                try (InputStream inputStream = current.getInputStream();
+                     FileOutputStream outputStream = new FileOutputStream(file)) {
+                    int read;
+                    while ((!cancelled) && ((read = inputStream.read(buffer)) >= 0)) {
+                        outputStream.write(buffer, 0, read);
+                        digest.update(buffer, 0, read);
+                        if (extractor != null) {
+                            extractor.write(buffer, 0, read);
+                        }
+                        bytesRead += read;
+                    }
+                }
+                if (cancelled) {
+                    return;
+                }
+                if (extractor != null) {
+                    extractor.finish();
+                }
+                long elapsed = System.nanoTime() - startTransfer;
+                bootstrap.getTrace().record(artifactName, "transfer", startTransfer, bytesRead);
+
+                String md5sum = String.format("%1$032x", new Object[] { new BigInteger(1, digest.digest()) });
+                if (!md5.equalsIgnoreCase(md5sum)) {
+                    bootstrap.println(new StringBuilder().append(url).append(" sent a file with the wrong MD5 hash").toString());
+                    if (stats != null) {
+                        stats.recordFailure(url);
+                    }
+                    return;
+                }
+                if (stats != null) {
+                    stats.recordThroughput(url, bytesRead, elapsed);
+                }
+                synchronized (HedgedDownload.this) {
+                    succeeded = !cancelled;
+                }
+            } catch (IOException | NoSuchAlgorithmException e) {
+                if (!cancelled) {
+                    bootstrap.println(new StringBuilder().append("Download from ").append(url).append(" failed: ").append(e.toString()).toString());
+                    if (stats != null) {
+                        stats.recordFailure(url);
+                    }
+                }
+            } finally {
+                if (!succeeded) {
+                    file.delete();
+                }
+                done = true;
+                racerDone();
+            }
+        }
+    }
+}
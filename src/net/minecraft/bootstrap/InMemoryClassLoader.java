@@ -0,0 +1,230 @@
+package net.minecraft.bootstrap;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Loads classes and resources from a jar held in memory, either decoded into a byte array or
+ * memory mapped. The central directory is read once into a table of where each entry's data
+ * starts, entries are only inflated when they are asked for.
+ *
+ * @author Branzel
+ */
+public class InMemoryClassLoader extends ClassLoader
+{
+    private static final String PROTOCOL = "bml-memory";
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final ByteBuffer image;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final URLStreamHandler handler = new Handler();
+    private final ProtectionDomain protectionDomain;
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    /**
+     * @param name only used in the urls of resources, like a file name
+     */
+    public InMemoryClassLoader(ByteBuffer image, String name, ClassLoader parent) throws IOException {
+        super(parent);
+        this.image = image.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        index();
+        protectionDomain = new ProtectionDomain(new CodeSource(new URL(PROTOCOL, null, -1, "/" + name, handler), (Certificate[]) null), null, this, null);
+    }
+
+    /**
+     * @return the number of entries in the jar
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void index() throws IOException {
+        int length = image.limit();
+        int endPosition = -1;
+        for (int i = length - 22; i >= Math.max(0, length - 65557); i--) {
+            if (image.getInt(i) == END_HEADER) {
+                endPosition = i;
+                break;
+            }
+        }
+        if (endPosition < 0) {
+            throw new IOException("Not a jar, no central directory");
+        }
+
+        long directorySize = image.getInt(endPosition + 12) & 0xFFFFFFFFL;
+        long directoryOffset = image.getInt(endPosition + 16) & 0xFFFFFFFFL;
+        if (directoryOffset + directorySize > length) {
+            throw new IOException("Central directory out of bounds");
+        }
+
+        int position = (int) directoryOffset;
+        int directoryEnd = (int) (directoryOffset + directorySize);
+        while ((position + 46 <= directoryEnd) && (image.getInt(position) == CENTRAL_HEADER)) {
+            Entry entry = new Entry();
+            entry.method = image.getShort(position + 10) & 0xFFFF;
+            long compressedSize = image.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = image.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = image.getShort(position + 28) & 0xFFFF;
+            int extraLength = image.getShort(position + 30) & 0xFFFF;
+            int commentLength = image.getShort(position + 32) & 0xFFFF;
+            long localOffset = image.getInt(position + 42) & 0xFFFFFFFFL;
+            if ((compressedSize == 0xFFFFFFFFL) || (size == 0xFFFFFFFFL) || (localOffset + 30L > length)) {
+                throw new IOException("Zip64 jars are not supported");
+            }
+            if (image.getInt((int) localOffset) != LOCAL_HEADER) {
+                throw new IOException("Broken local header at " + localOffset);
+            }
+
+            byte[] name = new byte[nameLength];
+            ByteBuffer nameBuffer = image.duplicate();
+            nameBuffer.position(position + 46);
+            nameBuffer.get(name);
+
+            // The local header can carry a different extra field than the central one
+            entry.offset = (int) localOffset + 30 + (image.getShort((int) localOffset + 26) & 0xFFFF) + (image.getShort((int) localOffset + 28) & 0xFFFF);
+            entry.compressedSize = (int) compressedSize;
+            entry.size = (int) size;
+            if (entry.offset + entry.compressedSize > length) {
+                throw new IOException("Entry out of bounds at " + localOffset);
+            }
+            entries.put(new String(name, UTF_8), entry);
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private byte[] read(Entry entry) throws IOException {
+        ByteBuffer data = image.duplicate();
+        data.position(entry.offset);
+        byte[] compressed = new byte[entry.compressedSize];
+        data.get(compressed);
+        if (entry.method == ZipEntry.STORED) {
+            return compressed;
+        }
+        if (entry.method != ZipEntry.DEFLATED) {
+            throw new IOException("Unsupported compression method " + entry.method);
+        }
+
+        byte[] result = new byte[entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int done = 0;
+            while (done < result.length) {
+                int inflated = inflater.inflate(result, done, result.length - done);
+                if ((inflated == 0) && ((inflater.finished()) || (inflater.needsInput()) || (inflater.needsDictionary()))) {
+                    throw new IOException("Truncated entry");
+                }
+                done += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Broken entry: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Entry entry = entries.get(name.replace('.', '/') + ".class");
+        if (entry == null) {
+            throw new ClassNotFoundException(name);
+        }
+        byte[] bytes;
+        try {
+            bytes = read(entry);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            String packageName = name.substring(0, dot);
+            if (getPackage(packageName) == null) {
+                try {
+                    definePackage(packageName, null, null, null, null, null, null, null);
+                } catch (IllegalArgumentException ignored) {
+                    // Defined by another thread in the meantime
+                }
+            }
+        }
+        return defineClass(name, bytes, 0, bytes.length, protectionDomain);
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        if (!entries.containsKey(name)) {
+            return null;
+        }
+        try {
+            return new URL(PROTOCOL, null, -1, "/" + name, handler);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        URL url = findResource(name);
+        return url == null ? Collections.<URL>emptyEnumeration() : Collections.enumeration(Collections.singletonList(url));
+    }
+
+    private static class Entry
+    {
+        private int offset;
+        private int compressedSize;
+        private int size;
+        private int method;
+    }
+
+    private class Handler extends URLStreamHandler
+    {
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException {
+            final Entry entry = entries.get(url.getPath().substring(1));
+            if (entry == null) {
+                throw new FileNotFoundException(url.toString());
+            }
+            return new URLConnection(url) {
+                @Override
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    return new ByteArrayInputStream(read(entry));
+                }
+
+                @Override
+                public int getContentLength() {
+                    return entry.size;
+                }
+            };
+        }
+    }
+}
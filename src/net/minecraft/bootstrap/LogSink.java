@@ -0,0 +1,124 @@
+package net.minecraft.bootstrap;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Collects log output from any thread without blocking it. A single
+ * consumer thread drains the queue, writes everything that piled up as one
+ * batch and keeps the most recent output for crash reports.
+ *
+ * @author Branzel
+ */
+public class LogSink implements Runnable
+{
+    private static final int MAX_HISTORY = 262144;
+    private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(50L);
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<String> history = new ArrayDeque<>();
+    private final AtomicLong produced = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final PrintStream console;
+    private final Output output;
+    private final Thread consumer;
+    private int historyLength;
+
+    /**
+     * @param output receives every batch after the console, may be null
+     */
+    public LogSink(PrintStream console, Output output) {
+        this.console = console;
+        this.output = output;
+        this.consumer = new Thread(this, "Log sink");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    public void log(String string) {
+        queue.add(string);
+        produced.incrementAndGet();
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Waits until everything logged so far has been handed to the output.
+     */
+    public void flush() {
+        long target = produced.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2L);
+        while ((consumed.get() < target) && (System.nanoTime() < deadline) && (consumer.isAlive())) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1L));
+        }
+    }
+
+    /**
+     * @return the most recent output, at most {@value #MAX_HISTORY} characters of it
+     */
+    public String getHistory() {
+        flush();
+        StringBuilder builder = new StringBuilder(MAX_HISTORY);
+        synchronized (history) {
+            for (String string : history) {
+                builder.append(string);
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void run() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            long count = 0L;
+            String string;
+            while ((string = queue.poll()) != null) {
+                batch.append(string);
+                count++;
+            }
+
+            if (count == 0L) {
+                LockSupport.parkNanos(this, IDLE_WAIT);
+                continue;
+            }
+
+            String text = batch.toString();
+            batch.setLength(0);
+            try {
+                console.print(text);
+                remember(text);
+                if (output != null) {
+                    output.write(text);
+                }
+            } catch (RuntimeException ignored) {
+                // Losing a line of log is better than losing the log thread
+            }
+            consumed.addAndGet(count);
+        }
+    }
+
+    private void remember(String text) {
+        if (text.length() > MAX_HISTORY) {
+            text = text.substring(text.length() - MAX_HISTORY);
+        }
+        synchronized (history) {
+            history.addLast(text);
+            historyLength += text.length();
+            while ((historyLength > MAX_HISTORY) && (history.size() > 1)) {
+                historyLength -= history.removeFirst().length();
+            }
+        }
+    }
+
+    public static interface Output
+    {
+        /**
+         * Called from the log thread with everything logged since the previous call.
+         */
+        void write(String text);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,193 @@
+package net.minecraft.bootstrap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the verified artifacts of a working directory over HTTP, so other bootstraps on the
+ * network can use it as a mirror with --mirror. Only the artifacts of the last published update
+ * are served, as /name and /name.hash, with HEAD and range support for resumed downloads.
+ * Clients still verify everything against the hashes of the origin.
+ *
+ * @author Branzel
+ */
+public class MirrorServer
+{
+    private static final int MAX_THREADS = 8;
+    private final Bootstrap bootstrap;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile Map<String, Published> published = Collections.emptyMap();
+
+    public MirrorServer(Bootstrap bootstrap, int port) throws IOException {
+        this.bootstrap = bootstrap;
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", new Handler());
+        executor = Executors.newFixedThreadPool(MAX_THREADS, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Mirror #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        bootstrap.println(new StringBuilder().append("Serving mirror on port ").append(server.getAddress().getPort()).toString());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Makes the given artifacts available, replacing what was served before. Artifacts whose
+     * packed file is missing or can't be hashed are left out.
+     */
+    public void publish(List<Artifact> artifacts) {
+        Map<String, Published> next = new HashMap<>();
+        for (Artifact artifact : artifacts) {
+            File packedFile = artifact.getPackedFile();
+            if (!packedFile.isFile()) {
+                continue;
+            }
+            String md5 = bootstrap.getMd5(packedFile);
+            if (md5 != null) {
+                next.put(artifact.getName(), new Published(packedFile, md5));
+            }
+        }
+        published = next;
+        bootstrap.println(new StringBuilder().append("Mirror is serving ").append(next.size()).append(next.size() == 1 ? " artifact" : " artifacts").toString());
+    }
+
+    private static class Published
+    {
+        private final File file;
+        private final String md5;
+
+        Published(File file, String md5) {
+            this.file = file;
+            this.md5 = md5;
+        }
+    }
+
+    private class Handler implements HttpHandler
+    {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                String method = exchange.getRequestMethod();
+                if ((!"GET".equals(method)) && (!"HEAD".equals(method))) {
+                    exchange.sendResponseHeaders(405, -1L);
+                    return;
+                }
+
+                String name = exchange.getRequestURI().getPath().substring(1);
+                boolean hash = name.endsWith(".hash");
+                Published artifact = published.get(hash ? name.substring(0, name.length() - 5) : name);
+                if (artifact == null) {
+                    exchange.sendResponseHeaders(404, -1L);
+                    return;
+                }
+
+                if (hash) {
+                    sendHash(exchange, artifact);
+                } else {
+                    sendFile(exchange, artifact);
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void sendHash(HttpExchange exchange, Published artifact) throws IOException {
+            byte[] body = artifact.md5.getBytes("US-ASCII");
+            exchange.getResponseHeaders().set("Content-Type", "text/plain");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+                exchange.sendResponseHeaders(200, -1L);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        }
+
+        private void sendFile(HttpExchange exchange, Published artifact) throws IOException {
+            // Opened before anything is sent, an update renaming a new file into place doesn't affect this response
+            try (RandomAccessFile file = new RandomAccessFile(artifact.file, "r")) {
+                long length = file.length();
+                long from = 0L;
+                long to = length - 1L;
+                int status = 200;
+
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                String etag = new StringBuilder().append('"').append(artifact.md5).append('"').toString();
+                if ((range != null) && (range.startsWith("bytes=")) && ((ifRange == null) || (ifRange.equals(etag)))) {
+                    try {
+                        String[] bounds = range.substring(6).split("-", 2);
+                        from = Long.parseLong(bounds[0].trim());
+                        if (!bounds[1].trim().isEmpty()) {
+                            to = Math.min(to, Long.parseLong(bounds[1].trim()));
+                        }
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        from = length;
+                    }
+                    if ((from >= length) || (from > to)) {
+                        exchange.getResponseHeaders().set("Content-Range", "bytes */" + length);
+                        exchange.sendResponseHeaders(416, -1L);
+                        return;
+                    }
+                    status = 206;
+                    exchange.getResponseHeaders().set("Content-Range", new StringBuilder().append("bytes ").append(from).append("-").append(to).append("/").append(length).toString());
+                }
+
+                exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+                exchange.getResponseHeaders().set("ETag", etag);
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+                    exchange.sendResponseHeaders(status, -1L);
+                    return;
+                }
+
+                long count = (to - from) + 1L;
+                exchange.sendResponseHeaders(status, count);
+                file.seek(from);
+                byte[] buffer = new byte[65536];
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    while (count > 0L) {
+                        int read = file.read(buffer, 0, (int) Math.min(buffer.length, count));
+                        if (read < 0) {
+                            break;
+                        }
+                        outputStream.write(buffer, 0, read);
+                        count -= read;
+                    }
+                }
+            }
+        }
+    }
+}
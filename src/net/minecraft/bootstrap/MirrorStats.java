@@ -0,0 +1,176 @@
+package net.minecraft.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measured latency, throughput and failures per download host, kept between runs so a host that
+ * was slow or broken last time isn't the first one tried. Hosts are ranked by how long they are
+ * expected to take for a given file, hosts we know nothing about get middling defaults.
+ *
+ * @author Branzel
+ */
+public class MirrorStats
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final double WEIGHT = 0.3D;
+    private static final double DEFAULT_LATENCY_MS = 500.0D;
+    private static final double DEFAULT_KB_PER_SECOND = 1024.0D;
+    private static final double FAILURE_PENALTY_MS = 10000.0D;
+    private static final int MAX_FAILURES = 5;
+    private final File statsFile;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded;
+    private boolean changed;
+
+    public MirrorStats(File statsFile) {
+        this.statsFile = statsFile;
+    }
+
+    public synchronized void recordLatency(URL url, long nanos) {
+        Entry entry = getEntry(url);
+        entry.latencyMs = average(entry.latencyMs, nanos / 1000000.0D);
+        entry.failures = 0;
+        changed = true;
+    }
+
+    public synchronized void recordThroughput(URL url, long bytes, long nanos) {
+        if ((bytes < 65536L) || (nanos <= 0L)) {
+            // Too little data to say anything about the bandwidth
+            return;
+        }
+        Entry entry = getEntry(url);
+        entry.kbPerSecond = average(entry.kbPerSecond, (bytes / 1024.0D) / (nanos / 1.0E9D));
+        entry.failures = 0;
+        changed = true;
+    }
+
+    public synchronized void recordFailure(URL url) {
+        Entry entry = getEntry(url);
+        entry.failures = Math.min(MAX_FAILURES, entry.failures + 1);
+        changed = true;
+    }
+
+    /**
+     * @return the urls ordered from the quickest expected download of size bytes to the slowest,
+     * urls that rank the same keep their order
+     */
+    public List<URL> rank(List<URL> urls, final long size) {
+        final Map<URL, Double> estimates = new HashMap<>();
+        synchronized (this) {
+            load();
+            for (URL url : urls) {
+                Entry entry = entries.get(getKey(url));
+                estimates.put(url, Double.valueOf(entry == null ? estimate(new Entry(), size) : estimate(entry, size)));
+            }
+        }
+        List<URL> ranked = new ArrayList<>(urls);
+        Collections.sort(ranked, new Comparator<URL>() {
+            @Override
+            public int compare(URL a, URL b) {
+                return Double.compare(estimates.get(a).doubleValue(), estimates.get(b).doubleValue());
+            }
+        });
+        return ranked;
+    }
+
+    private static double estimate(Entry entry, long size) {
+        double latency = entry.latencyMs < 0.0D ? DEFAULT_LATENCY_MS : entry.latencyMs;
+        double kbPerSecond = entry.kbPerSecond <= 0.0D ? DEFAULT_KB_PER_SECOND : entry.kbPerSecond;
+        double transfer = size > 0L ? ((size / 1024.0D) / kbPerSecond) * 1000.0D : 0.0D;
+        return latency + transfer + (entry.failures * FAILURE_PENALTY_MS);
+    }
+
+    private static double average(double previous, double sample) {
+        return previous < 0.0D ? sample : (previous * (1.0D - WEIGHT)) + (sample * WEIGHT);
+    }
+
+    private static String getKey(URL url) {
+        return new StringBuilder().append(url.getProtocol()).append("://").append(url.getAuthority()).toString();
+    }
+
+    private Entry getEntry(URL url) {
+        load();
+        String key = getKey(url);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!statsFile.isFile()) {
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(statsFile), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 4);
+                if (parts.length != 4) {
+                    continue;
+                }
+                Entry entry = new Entry();
+                entry.latencyMs = Double.parseDouble(parts[0]);
+                entry.kbPerSecond = Double.parseDouble(parts[1]);
+                entry.failures = Integer.parseInt(parts[2]);
+                entries.put(parts[3], entry);
+            }
+        } catch (IOException | NumberFormatException e) {
+            entries.clear();
+        }
+    }
+
+    public synchronized void save() {
+        if (!changed) {
+            return;
+        }
+        File temp = new File(statsFile.getPath() + ".tmp");
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF_8))) {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    Entry value = entry.getValue();
+                    writer.write(String.format(Locale.ROOT, "%.1f\t%.1f\t%d\t%s", new Object[] { Double.valueOf(value.latencyMs), Double.valueOf(value.kbPerSecond), Integer.valueOf(value.failures), entry.getKey() }));
+                    writer.write('\n');
+                }
+            }
+            if ((statsFile.exists()) && (!statsFile.delete())) {
+                throw new IOException("Unable to replace " + statsFile);
+            }
+            if (!temp.renameTo(statsFile)) {
+                throw new IOException("Unable to rename " + temp + " to " + statsFile);
+            }
+            changed = false;
+        } catch (IOException e) {
+            temp.delete();
+        }
+    }
+
+    private static class Entry
+    {
+        private double latencyMs = -1.0D;
+        private double kbPerSecond = -1.0D;
+        private int failures;
+    }
+}
@@ -0,0 +1,272 @@
+package net.minecraft.bootstrap;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Creates the patches {@link DeltaPatcher} applies. Run it on the publishing side with the
+ * previous and the new version of an artifact:
+ *
+ * <pre>
+ * java -cp BML.jar net.minecraft.bootstrap.PatchGenerator &lt;old file&gt; &lt;new file&gt; &lt;output directory&gt;
+ * </pre>
+ *
+ * The patch is written as {@code <new file name>.<md5 of old file>.patch} and has to be uploaded
+ * next to the artifact. Clients several versions behind follow a chain of patches, so keep the
+ * patches from each published version to the next one. Every patch is applied once before it is
+ * written and the tool fails if the result does not match the new file.
+ *
+ * The patch is a gzip compressed VCDIFF delta. For zip files it is made against the expanded
+ * archives described in {@link DeltaPatcher}, unless diffing the raw files gives a smaller patch.
+ * The whole of both files is held in memory, so large artifacts need a larger heap.
+ *
+ * @author Branzel
+ */
+public class PatchGenerator
+{
+    private static final int BLOCK_SIZE = 16;
+    private static final int WINDOW_SIZE = 8 << 20;
+    private static final int HASH_MULTIPLIER = 0x01000193;
+    private static final int HASH_POWER;
+
+    static {
+        int power = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            power *= HASH_MULTIPLIER;
+        }
+        HASH_POWER = power;
+    }
+
+    private PatchGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: java -cp BML.jar net.minecraft.bootstrap.PatchGenerator <old file> <new file> <output directory>");
+            System.exit(1);
+        }
+        File oldFile = new File(args[0]);
+        File newFile = new File(args[1]);
+        String oldMd5 = md5(oldFile);
+        String newMd5 = md5(newFile);
+
+        File patchFile = new File(args[2], new StringBuilder().append(newFile.getName()).append(".").append(oldMd5.toLowerCase()).append(".patch").toString());
+        create(oldFile, newFile, patchFile);
+
+        File check = new File(patchFile.getPath() + ".check");
+        try {
+            try (InputStream input = new FileInputStream(patchFile)) {
+                DeltaPatcher.apply(oldFile, input, check);
+            }
+            if (!newMd5.equals(md5(check))) {
+                patchFile.delete();
+                System.err.println("The patch does not reproduce the new file, it was not written");
+                System.exit(1);
+            }
+        } finally {
+            check.delete();
+        }
+        System.out.println(String.format("Wrote %s (%.1fkb for %.1fkb)", new Object[] { patchFile.getPath(), Float.valueOf(patchFile.length() / 1024.0F), Float.valueOf(newFile.length() / 1024.0F) }));
+    }
+
+    /**
+     * Computes the md5 without going through {@link Bootstrap}, so the tool runs from BML.jar alone.
+     */
+    private static String md5(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+            return String.format("%1$032x", new Object[] { new BigInteger(1, digest.digest()) });
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes a patch from the old to the new file, diffing the expanded archives if that is smaller.
+     */
+    public static void create(File oldFile, File newFile, File patchFile) throws IOException {
+        byte[] raw = encode(Files.readAllBytes(oldFile.toPath()), Files.readAllBytes(newFile.toPath()), null);
+
+        File source = new File(patchFile.getPath() + ".source");
+        File target = new File(patchFile.getPath() + ".target");
+        byte[] expanded;
+        try {
+            DeltaPatcher.expand(oldFile, source, false);
+            DeltaPatcher.expand(newFile, target, true);
+            expanded = encode(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()), DeltaPatcher.EXPANDED_ZIP);
+        } finally {
+            source.delete();
+            target.delete();
+        }
+
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(patchFile), 65536)) {
+            output.write(expanded.length < raw.length ? expanded : raw);
+        }
+    }
+
+    /**
+     * Returns a gzip compressed VCDIFF delta from source to target. Each window of the target uses the
+     * whole source as its source segment; runs of at least one block that occur in the source become
+     * copies and everything else is added as literal data.
+     */
+    private static byte[] encode(byte[] source, byte[] target, String applicationHeader) throws IOException {
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(patch, 65536)) {
+            output.write(new byte[] { (byte) 0xD6, (byte) 0xC3, (byte) 0xC4, 0x00 });
+            if (applicationHeader == null) {
+                output.write(0);
+            } else {
+                byte[] header = applicationHeader.getBytes(StandardCharsets.UTF_8);
+                output.write(0x04);
+                writeInt(output, header.length);
+                output.write(header);
+            }
+
+            int bits = 10;
+            while ((bits < 26) && ((1 << bits) < source.length / BLOCK_SIZE * 2)) {
+                bits++;
+            }
+            int[] index = new int[1 << bits];
+            for (int i = 0; i + BLOCK_SIZE <= source.length; i += BLOCK_SIZE) {
+                index[slot(hash(source, i), bits)] = i + 1;
+            }
+
+            for (int start = 0; start < target.length; start += WINDOW_SIZE) {
+                encodeWindow(source, index, bits, target, start, Math.min(target.length, start + WINDOW_SIZE), output);
+            }
+        }
+        return patch.toByteArray();
+    }
+
+    private static void encodeWindow(byte[] source, int[] index, int bits, byte[] target, int start, int end, OutputStream output) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteArrayOutputStream instructions = new ByteArrayOutputStream();
+        ByteArrayOutputStream addresses = new ByteArrayOutputStream();
+
+        int pending = start;
+        int position = start;
+        int hash = position + BLOCK_SIZE <= end ? hash(target, position) : 0;
+        while (position + BLOCK_SIZE <= end) {
+            int candidate = index[slot(hash, bits)] - 1;
+            if ((candidate >= 0) && matches(source, candidate, target, position)) {
+                int length = BLOCK_SIZE;
+                while ((position + length < end) && (candidate + length < source.length) && (source[candidate + length] == target[position + length])) {
+                    length++;
+                }
+                int back = 0;
+                while ((position - back > pending) && (candidate - back > 0) && (source[candidate - back - 1] == target[position - back - 1])) {
+                    back++;
+                }
+
+                add(target, pending, position - back, data, instructions);
+                copy(candidate - back, length + back, instructions, addresses);
+                position += length;
+                pending = position;
+                if (position + BLOCK_SIZE <= end) {
+                    hash = hash(target, position);
+                }
+                continue;
+            }
+            if (position + BLOCK_SIZE < end) {
+                hash = (hash - (target[position] & 0xFF) * HASH_POWER) * HASH_MULTIPLIER + (target[position + BLOCK_SIZE] & 0xFF);
+            }
+            position++;
+        }
+        add(target, pending, end, data, instructions);
+
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        writeInt(delta, end - start);
+        delta.write(0);
+        writeInt(delta, data.size());
+        writeInt(delta, instructions.size());
+        writeInt(delta, addresses.size());
+        data.writeTo(delta);
+        instructions.writeTo(delta);
+        addresses.writeTo(delta);
+
+        if (source.length > 0) {
+            output.write(0x01);
+            writeInt(output, source.length);
+            writeInt(output, 0);
+        } else {
+            output.write(0);
+        }
+        writeInt(output, delta.size());
+        delta.writeTo(output);
+    }
+
+    private static void add(byte[] target, int from, int to, ByteArrayOutputStream data, ByteArrayOutputStream instructions) throws IOException {
+        int size = to - from;
+        if (size <= 0) {
+            return;
+        }
+        // Codes 2 to 18 of the default table are adds of 1 to 17 bytes, code 1 takes the size.
+        if (size <= 17) {
+            instructions.write(1 + size);
+        } else {
+            instructions.write(1);
+            writeInt(instructions, size);
+        }
+        data.write(target, from, size);
+    }
+
+    private static void copy(int address, int size, ByteArrayOutputStream instructions, ByteArrayOutputStream addresses) throws IOException {
+        // Codes 20 to 34 are copies of 4 to 18 bytes in mode SELF, code 19 takes the size.
+        if (size <= 18) {
+            instructions.write(16 + size);
+        } else {
+            instructions.write(19);
+            writeInt(instructions, size);
+        }
+        writeInt(addresses, address);
+    }
+
+    private static boolean matches(byte[] source, int sourcePosition, byte[] target, int targetPosition) {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            if (source[sourcePosition + i] != target[targetPosition + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, int position) {
+        int hash = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            hash = hash * HASH_MULTIPLIER + (bytes[position + i] & 0xFF);
+        }
+        return hash;
+    }
+
+    private static int slot(int hash, int bits) {
+        return (hash * 0x9E3779B1) >>> (32 - bits);
+    }
+
+    private static void writeInt(OutputStream output, int value) throws IOException {
+        int shift = 28;
+        while ((shift > 0) && ((value >>> shift) == 0)) {
+            shift -= 7;
+        }
+        for (; shift > 0; shift -= 7) {
+            output.write(((value >>> shift) & 0x7F) | 0x80);
+        }
+        output.write(value & 0x7F);
+    }
+}
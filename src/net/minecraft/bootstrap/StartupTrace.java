@@ -0,0 +1,109 @@
+package net.minecraft.bootstrap;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects how long each startup phase took per artifact, with the number of bytes it handled,
+ * and appends them to a JSON lines file so starts can be compared. Times are taken from
+ * System.nanoTime and written in microseconds since the bootstrap started.
+ *
+ * @author Branzel
+ */
+public class StartupTrace
+{
+    public static final String FILE_NAME = "startup-trace.jsonl";
+    private static final long MAX_FILE_SIZE = 1024L * 1024L;
+    private static final int MAX_HISTORY = 4096;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final File traceFile;
+    private final long origin = System.nanoTime();
+    private final long run = System.currentTimeMillis();
+    private final Queue<Event> pending = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Event> history = new ArrayDeque<>();
+    private final Gson gson = new Gson();
+
+    public StartupTrace(File traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * Records a phase that started at startNanos and ends now.
+     */
+    public void record(String artifact, String phase, long startNanos, long bytes) {
+        record(artifact, phase, startNanos, System.nanoTime(), bytes);
+    }
+
+    public void record(String artifact, String phase, long startNanos, long endNanos, long bytes) {
+        Event event = new Event(run, artifact, phase, (startNanos - origin) / 1000L, (endNanos - startNanos) / 1000L, bytes, Thread.currentThread().getName());
+        pending.add(event);
+        synchronized (history) {
+            history.addLast(event);
+            if (history.size() > MAX_HISTORY) {
+                history.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Appends everything recorded since the last call to the trace file. The file is started over
+     * once it grows too big, so it holds the last few starts.
+     */
+    public synchronized void save() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        boolean append = traceFile.length() < MAX_FILE_SIZE;
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(traceFile, append), UTF_8)) {
+            Event event;
+            while ((event = pending.poll()) != null) {
+                writer.write(gson.toJson(event));
+                writer.write(10);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * @return the most recent phases recorded by this bootstrap as JSON lines, at most
+     *         {@value #MAX_HISTORY} of them, for crash reports
+     */
+    public String toJsonLines() {
+        StringBuilder builder = new StringBuilder();
+        synchronized (history) {
+            for (Event event : history) {
+                builder.append(gson.toJson(event)).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static class Event
+    {
+        private final long run;
+        private final String artifact;
+        private final String phase;
+        private final long startUs;
+        private final long durationUs;
+        private final long bytes;
+        private final String thread;
+
+        Event(long run, String artifact, String phase, long startUs, long durationUs, long bytes, String thread) {
+            this.run = run;
+            this.artifact = artifact;
+            this.phase = phase;
+            this.startUs = startUs;
+            this.durationUs = durationUs;
+            this.bytes = bytes;
+            this.thread = thread;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts an archive into a staging directory while it is still being
+ * downloaded. The downloader feeds every byte it writes to disk into
+ * {@link #write}; once the download is verified, {@link #commit} moves the
+ * staged files into place. Anything unexpected just abandons the staging
+ * directory, and the archive gets extracted the usual way afterwards.
+ *
+ * Like {@link ZipExtractor}, files go through the shared store when there is
+ * one, and only the entries of the archive are replaced on commit, so other
+ * files in the same folders are left alone.
+ *
+ * @author Branzel
+ */
+public class StreamExtractor implements Runnable
+{
+    private static final int PIPE_SIZE = 1048576;
+    private final Bootstrap bootstrap;
+    private final File stagingDir;
+    private final ArtifactStore store;
+    private final ExtractManifest manifest = new ExtractManifest();
+    private final List<String> directories = new ArrayList<>();
+    private PipedOutputStream pipe;
+    private PipedInputStream input;
+    private Thread thread;
+    private volatile boolean failed;
+    private volatile boolean completed;
+    private int entries;
+
+    public StreamExtractor(Bootstrap bootstrap, File stagingDir) {
+        this(bootstrap, stagingDir, null);
+    }
+
+    /**
+     * @param store if not null, extracted files are put in the store and linked into the staging directory
+     */
+    public StreamExtractor(Bootstrap bootstrap, File stagingDir, ArtifactStore store) {
+        this.bootstrap = bootstrap;
+        this.stagingDir = stagingDir;
+        this.store = store;
+    }
+
+    public synchronized boolean isStarted() {
+        return thread != null;
+    }
+
+    public synchronized void start(String name) {
+        if ((thread != null) || (failed)) {
+            return;
+        }
+        if (stagingDir.exists()) {
+            bootstrap.deleteFile(stagingDir);
+        }
+        try {
+            input = new PipedInputStream(PIPE_SIZE);
+            pipe = new PipedOutputStream(input);
+        } catch (IOException e) {
+            failed = true;
+            return;
+        }
+        thread = new Thread(this, "Extractor for " + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Hands downloaded bytes to the extractor. Never throws, a broken pipeline must not break the download.
+     */
+    public void write(byte[] buffer, int offset, int length) {
+        if ((failed) || (pipe == null)) {
+            return;
+        }
+        try {
+            pipe.write(buffer, offset, length);
+        } catch (IOException e) {
+            abort();
+        }
+    }
+
+    /**
+     * Signals the end of the download and waits for the extractor to catch up.
+     *
+     * @return true when every entry was extracted to the staging directory
+     */
+    public boolean finish() {
+        if ((failed) || (thread == null)) {
+            return false;
+        }
+        Bootstrap.closeSilently(pipe);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            abort();
+            return false;
+        }
+        return (completed) && (!failed);
+    }
+
+    public void abort() {
+        failed = true;
+        Bootstrap.closeSilently(pipe);
+        Bootstrap.closeSilently(input);
+    }
+
+    /**
+     * Moves the staged entries into outputDir, replacing them one by one, and removes the files the
+     * previous extraction recorded in manifestFile that are no longer in the archive.
+     */
+    public boolean commit(File outputDir, File manifestFile) {
+        if ((!completed) || (failed)) {
+            return false;
+        }
+        ExtractManifest previous = ExtractManifest.load(manifestFile);
+
+        for (String name : directories) {
+            new File(outputDir, name).mkdirs();
+        }
+        for (String name : manifest.names()) {
+            File file = new File(stagingDir, name);
+            File target = new File(outputDir, name);
+            if (target.getParentFile() != null) {
+                target.getParentFile().mkdirs();
+            }
+            if (target.exists()) {
+                bootstrap.deleteFile(target);
+            }
+            if (!file.renameTo(target)) {
+                bootstrap.println("Unable to move " + file + " into place");
+                return false;
+            }
+        }
+        for (String name : previous.names()) {
+            File file = new File(outputDir, name);
+            if ((manifest.get(name) == null) && (file.isFile()) && (!file.delete())) {
+                bootstrap.println("Unable to remove " + file.toString());
+            }
+        }
+        try {
+            manifest.save(manifestFile);
+        } catch (IOException e) {
+            manifestFile.delete();
+        }
+        bootstrap.deleteFile(stagingDir);
+        bootstrap.println(new StringBuilder().append("Extracted ").append(entries).append(" files while downloading").toString());
+        return true;
+    }
+
+    public void discard() {
+        abort();
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException ignored) {
+            }
+        }
+        if (stagingDir.exists()) {
+            bootstrap.deleteFile(stagingDir);
+        }
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[65536];
+        try (ZipInputStream zipInputStream = new ZipInputStream(input)) {
+            ZipEntry entry;
+            while ((!failed) && ((entry = zipInputStream.getNextEntry()) != null)) {
+                String name = entry.getName();
+                if (name.contains("..")) {
+                    throw new IOException("Refusing to extract " + name);
+                }
+                File file = new File(stagingDir, name);
+                if (entry.isDirectory()) {
+                    file.mkdirs();
+                    directories.add(name);
+                    continue;
+                }
+                if (file.getParentFile() != null) {
+                    file.getParentFile().mkdirs();
+                }
+                if (store != null) {
+                    extractToStore(zipInputStream, entry, file, buffer);
+                } else {
+                    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                        int read;
+                        while ((read = zipInputStream.read(buffer)) >= 0) {
+                            outputStream.write(buffer, 0, read);
+                        }
+                    }
+                    if (entry.getTime() != -1L) {
+                        file.setLastModified(entry.getTime());
+                    }
+                }
+                // Sizes and CRC are only known once a streamed entry has been read completely
+                manifest.put(name, entry.getCrc(), entry.getSize());
+                entries++;
+            }
+            // Keep reading past the central directory so the downloader never blocks on a full pipe
+            drain(input, buffer);
+            completed = !failed;
+        } catch (IOException e) {
+            if (!failed) {
+                bootstrap.println("Unable to extract while downloading, will extract afterwards: " + e.toString());
+            }
+            failed = true;
+            try {
+                drain(input, buffer);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void extractToStore(InputStream input, ZipEntry entry, File file, byte[] buffer) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        File temp = store.createTempFile();
+        try {
+            try (FileOutputStream output = new FileOutputStream(temp)) {
+                int read;
+                while ((read = input.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, read);
+                    output.write(buffer, 0, read);
+                }
+            }
+            if (entry.getTime() != -1L) {
+                temp.setLastModified(entry.getTime());
+            }
+
+            String hash = String.format("%1$032x", new Object[] { new BigInteger(1, digest.digest()) });
+            store.add(temp, hash);
+            store.linkTo(hash, file);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static void drain(InputStream inputStream, byte[] buffer) throws IOException {
+        while (inputStream.read(buffer) >= 0) {
+        }
+    }
+}
\ No newline at end of file
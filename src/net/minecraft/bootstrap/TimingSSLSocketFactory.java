@@ -0,0 +1,78 @@
+package net.minecraft.bootstrap;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Wraps the default SSL socket factory to note when the TLS handshake starts, so a connect can be
+ * split into its TCP and TLS parts. Unconnected sockets are refused on purpose, that makes
+ * HttpsURLConnection connect a plain socket first and layer TLS over it through this factory.
+ * One shared instance is used, the keep-alive cache only reuses connections made by the same factory.
+ *
+ * @author Branzel
+ */
+class TimingSSLSocketFactory extends SSLSocketFactory
+{
+    private static TimingSSLSocketFactory instance;
+    private final SSLSocketFactory delegate;
+    private final ThreadLocal<Long> handshakeStart = new ThreadLocal<>();
+
+    private TimingSSLSocketFactory(SSLSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    public static synchronized TimingSSLSocketFactory getInstance() {
+        if (instance == null) {
+            instance = new TimingSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+        }
+        return instance;
+    }
+
+    /**
+     * @return when the current thread last started a handshake, or 0 when it didn't, and forgets it
+     */
+    public long takeHandshakeStart() {
+        Long start = handshakeStart.get();
+        handshakeStart.remove();
+        return start == null ? 0L : start.longValue();
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        handshakeStart.set(Long.valueOf(System.nanoTime()));
+        return delegate.createSocket(socket, host, port, autoClose);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return delegate.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return delegate.createSocket(address, port, localAddress, localPort);
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+}
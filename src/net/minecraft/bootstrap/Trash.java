@@ -0,0 +1,204 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A directory in the working directory that old trees are renamed into, so whoever deletes them
+ * can go on right away. The trash is emptied by background threads, several subtrees at a time.
+ * Whatever is left when the JVM exits is emptied on the next start.
+ *
+ * @author Branzel
+ */
+public class Trash
+{
+    private static final int THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private final Bootstrap bootstrap;
+    private final File trashDir;
+    private final AtomicInteger count = new AtomicInteger();
+    private boolean emptying;
+
+    public Trash(Bootstrap bootstrap, File trashDir) {
+        this.bootstrap = bootstrap;
+        this.trashDir = trashDir;
+    }
+
+    /**
+     * Renames file into the trash and has it deleted in the background.
+     *
+     * @return false when it can't be renamed, for example across file systems
+     */
+    public boolean moveToTrash(File file) {
+        if ((!trashDir.isDirectory()) && (!trashDir.mkdirs())) {
+            return false;
+        }
+        File target = new File(trashDir, new StringBuilder().append(file.getName()).append('.').append(System.currentTimeMillis()).append('.').append(count.incrementAndGet()).toString());
+        try {
+            Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+        empty();
+        return true;
+    }
+
+    /**
+     * Starts emptying the trash in the background, unless that is already going on.
+     */
+    public synchronized void empty() {
+        if ((emptying) || (!trashDir.isDirectory())) {
+            return;
+        }
+        emptying = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                emptyNow();
+            }
+        }, "Trash");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private void emptyNow() {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            private final AtomicInteger threads = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Trash #" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        AtomicLong deleted = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        try {
+            while (true) {
+                File[] trashed;
+                synchronized (this) {
+                    trashed = trashDir.listFiles();
+                    if ((trashed == null) || (trashed.length == 0)) {
+                        trashDir.delete();
+                        emptying = false;
+                        break;
+                    }
+                }
+
+                // Every child of a trashed tree is a task of its own, the tree itself goes last
+                List<Future<?>> tasks = new ArrayList<>();
+                for (File tree : trashed) {
+                    File[] children = tree.listFiles();
+                    if (children != null) {
+                        for (File child : children) {
+                            tasks.add(submitDelete(executor, child.toPath(), deleted, failed));
+                        }
+                    }
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+                for (File tree : trashed) {
+                    delete(tree.toPath(), deleted, failed);
+                }
+                if (failed.get() > 0L) {
+                    // Probably held open by another program, try again on the next start
+                    synchronized (this) {
+                        emptying = false;
+                    }
+                    break;
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            synchronized (this) {
+                emptying = false;
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        StringBuilder message = new StringBuilder().append("Emptied trash of ").append(deleted.get()).append(" files in ").append((System.nanoTime() - start) / 1000000L).append("ms");
+        if (failed.get() > 0L) {
+            message.append(", unable to delete ").append(failed.get());
+        }
+        bootstrap.println(message.toString());
+    }
+
+    private Future<?> submitDelete(ExecutorService executor, final Path path, final AtomicLong deleted, final AtomicLong failed) {
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                delete(path, deleted, failed);
+            }
+        });
+    }
+
+    /**
+     * Deletes path and, when it is a directory, everything in it. Symbolic links are deleted, not followed.
+     *
+     * @return the number of files deleted
+     */
+    public static long delete(Path path) {
+        AtomicLong deleted = new AtomicLong();
+        delete(path, deleted, new AtomicLong());
+        return deleted.get();
+    }
+
+    private static void delete(Path path, final AtomicLong deleted, final AtomicLong failed) {
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    remove(file, deleted, failed);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    if (!(e instanceof NoSuchFileException)) {
+                        // Unreadable directory, maybe it can still be deleted
+                        remove(file, deleted, failed);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    remove(dir, deleted, failed);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    private static void remove(Path path, AtomicLong deleted, AtomicLong failed) {
+        try {
+            if (Files.deleteIfExists(path)) {
+                deleted.incrementAndGet();
+            }
+        } catch (IOException e) {
+            failed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package net.minecraft.bootstrap;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The manifest.json published next to the artifacts. It lists every artifact
+ * with its hash, so a single request tells us what needs updating:
+ * <pre>
+ * {
+ *   "version": 1,
+ *   "artifacts": [
+ *     { "name": "mods.zip", "url": "mods.zip", "size": 1234, "md5": "...", "priority": 50, "target": "mods",
+ *       "mirrors": [ "https://mirror.example.com/BML/mods.zip" ] },
+ *     { "name": "resourcepacks.zip", "md5": "...", "deferred": true }
+ *   ]
+ * }
+ * </pre>
+ * Relative urls are resolved against the manifest url, mirrors are optional.
+ * Deferred artifacts are updated after the launcher has started. Entries whose
+ * name or target is not a plain file name within the working directory are
+ * ignored.
+ * The launcher may be listed in several formats, each with its own name and an
+ * optional "codec"; the first one this JVM can decode is used, see ArtifactCodec.
+ *
+ * @author Branzel
+ */
+public class UpdateManifest
+{
+    public static final int SUPPORTED_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private int version;
+    private List<Entry> artifacts = new ArrayList<>();
+
+    public static UpdateManifest parse(InputStream inputStream) throws IOException {
+        try (Reader reader = new InputStreamReader(inputStream, UTF_8)) {
+            UpdateManifest manifest = new Gson().fromJson(reader, UpdateManifest.class);
+            if (manifest == null) {
+                throw new IOException("Empty manifest");
+            }
+            if ((manifest.version < 1) || (manifest.version > SUPPORTED_VERSION)) {
+                throw new IOException("Unsupported manifest version " + manifest.version);
+            }
+            if (manifest.artifacts == null) {
+                manifest.artifacts = new ArrayList<>();
+            }
+            return manifest;
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid manifest: " + e.getMessage(), e);
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the artifacts of this manifest, highest priority first
+     */
+    public List<Artifact> getArtifacts(File workDir, URL manifestUrl) throws MalformedURLException {
+        List<Artifact> result = new ArrayList<>();
+        for (Entry entry : artifacts) {
+            String folder = Bootstrap.stringHasValue(entry.target) ? entry.target : Artifact.getDefaultFolder(entry.name == null ? "" : entry.name);
+            if ((!isPathElement(entry.name)) || (!isPathElement(folder))) {
+                continue;
+            }
+            String url = new URL(manifestUrl, Bootstrap.stringHasValue(entry.url) ? entry.url : entry.name).toString();
+            List<String> mirrors = new ArrayList<>();
+            if (entry.mirrors != null) {
+                for (String mirror : entry.mirrors) {
+                    if (Bootstrap.stringHasValue(mirror)) {
+                        mirrors.add(new URL(manifestUrl, mirror).toString());
+                    }
+                }
+            }
+            result.add(Artifact.create(workDir, entry.name, url, Bootstrap.stringHasValue(entry.md5) ? entry.md5 : null, entry.size, entry.priority, entry.target, mirrors, entry.codec, entry.deferred));
+        }
+        sortByPriority(result);
+        return result;
+    }
+
+    /**
+     * Names and targets become files and folders of the working directory, so each has to be a
+     * single plain path element.
+     */
+    private static boolean isPathElement(String value) {
+        return (Bootstrap.stringHasValue(value)) && (!value.equals(".")) && (!value.equals("..")) && (value.indexOf('/') < 0) && (value.indexOf('\\') < 0) && (value.indexOf(':') < 0) && (!new File(value).isAbsolute());
+    }
+
+    public static void sortByPriority(List<Artifact> artifacts) {
+        Collections.sort(artifacts, new Comparator<Artifact>() {
+            @Override
+            public int compare(Artifact a, Artifact b) {
+                return Integer.compare(b.getPriority(), a.getPriority());
+            }
+        });
+    }
+
+    public static class Entry
+    {
+        public String name;
+        public String url;
+        public long size = -1L;
+        public String md5;
+        public int priority;
+        public String target;
+        public List<String> mirrors;
+        public String codec;
+        public boolean deferred;
+    }
+}
\ No newline at end of file
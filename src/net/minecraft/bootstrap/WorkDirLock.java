@@ -0,0 +1,80 @@
+package net.minecraft.bootstrap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * An exclusive lock on a file in the working directory, held by whoever moves artifacts into
+ * place so a bootstrap and a prefetch never do so at the same time. The operating system drops it
+ * when the process dies, so a crash never leaves the working directory locked.
+ *
+ * @author Branzel
+ */
+public class WorkDirLock implements Closeable
+{
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    private WorkDirLock(FileChannel channel, FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * @return the lock, or null when another process or thread holds it
+     */
+    public static WorkDirLock tryAcquire(File lockFile) throws IOException {
+        FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return new WorkDirLock(channel, lock);
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held by this JVM
+        } catch (IOException | RuntimeException e) {
+            Bootstrap.closeSilently(channel);
+            throw e;
+        }
+        Bootstrap.closeSilently(channel);
+        return null;
+    }
+
+    /**
+     * Waits until the lock is free. A lock still held by this JVM, such as one kept until background
+     * downloads are done, is polled for since FileChannel.lock() can't wait for it.
+     */
+    public static WorkDirLock acquire(File lockFile) throws IOException {
+        while (true) {
+            FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+            try {
+                return new WorkDirLock(channel, channel.lock());
+            } catch (OverlappingFileLockException e) {
+                Bootstrap.closeSilently(channel);
+            } catch (IOException | RuntimeException e) {
+                Bootstrap.closeSilently(channel);
+                throw e;
+            }
+            try {
+                Thread.sleep(100L);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for " + lockFile);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            lock.release();
+        } catch (IOException ignored) {
+        }
+        Bootstrap.closeSilently(channel);
+    }
+}
@@ -0,0 +1,296 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts a set of entries from an archive on all cores. Directories are
+ * created up front, deflated entries are inflated through a large buffer
+ * and stored entries are copied straight from the archive with
+ * {@link FileChannel#transferTo}.
+ *
+ * @author Branzel
+ */
+public class ZipExtractor
+{
+    private static final int BUFFER_SIZE = 262144;
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final Bootstrap bootstrap;
+    private final File packedFile;
+    private final File outputDir;
+    private final ArtifactStore store;
+    private final AtomicInteger entriesDone = new AtomicInteger();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicInteger nextEntry = new AtomicInteger();
+
+    public ZipExtractor(Bootstrap bootstrap, File packedFile, File outputDir) {
+        this(bootstrap, packedFile, outputDir, null);
+    }
+
+    /**
+     * @param store if not null, extracted files are put in the store and linked into outputDir
+     */
+    public ZipExtractor(Bootstrap bootstrap, File packedFile, File outputDir, ArtifactStore store) {
+        this.bootstrap = bootstrap;
+        this.packedFile = packedFile;
+        this.outputDir = outputDir;
+        this.store = store;
+    }
+
+    public void extract(List<ZipEntry> entries) throws IOException {
+        final List<ZipEntry> files = new ArrayList<>();
+        TreeSet<File> directories = new TreeSet<>();
+        long totalBytes = 0L;
+        String root = outputDir.getCanonicalPath();
+        for (ZipEntry entry : entries) {
+            File file = new File(outputDir, entry.getName());
+            // Checked before anything is written, so a hostile archive fails as a whole
+            String path = file.getCanonicalPath();
+            if ((entry.getName().startsWith("/")) || (entry.getName().startsWith("\\")) || ((!path.startsWith(root + File.separator)) && (!path.equals(root)))) {
+                throw new IOException("Refusing to extract " + entry.getName());
+            }
+            if (entry.isDirectory()) {
+                directories.add(file);
+            } else {
+                files.add(entry);
+                totalBytes += Math.max(0L, entry.getSize());
+                if (file.getParentFile() != null) {
+                    directories.add(file.getParentFile());
+                }
+            }
+        }
+        for (File directory : directories) {
+            if ((!directory.isDirectory()) && (!directory.mkdirs()) && (!directory.isDirectory())) {
+                throw new IOException("Unable to create directory " + directory);
+            }
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+
+        // Hand out the biggest entries first so one large file doesn't end up last on a single core
+        Collections.sort(files, new Comparator<ZipEntry>() {
+            @Override
+            public int compare(ZipEntry a, ZipEntry b) {
+                return Long.compare(b.getSize(), a.getSize());
+            }
+        });
+
+        final Map<String, Long> storedOffsets = findStoredOffsets();
+        final long total = totalBytes;
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), files.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        work(files, storedOffsets, total);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while extracting", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        bootstrap.println(String.format("Extracted %d files (%.1fkb) from %s in %dms", new Object[] { Integer.valueOf(files.size()), Float.valueOf(bytesDone.get() / 1024.0F), packedFile.getName(), Long.valueOf(elapsed / 1000000L) }));
+    }
+
+    private void work(List<ZipEntry> files, Map<String, Long> storedOffsets, long totalBytes) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (ZipFile zipFile = new ZipFile(packedFile);
+             FileChannel archive = new FileInputStream(packedFile).getChannel()) {
+            int index;
+            while ((index = nextEntry.getAndIncrement()) < files.size()) {
+                ZipEntry entry = files.get(index);
+                File file = new File(outputDir, entry.getName());
+                Long offset = entry.getMethod() == ZipEntry.STORED ? storedOffsets.get(entry.getName()) : null;
+
+                // The old file may be a link into the shared store, so never write through it
+                Files.deleteIfExists(file.toPath());
+                if (store != null) {
+                    extractToStore(zipFile, entry, file, buffer);
+                    reportProgress(entriesDone.incrementAndGet(), entry.getSize(), totalBytes);
+                    continue;
+                }
+
+                try (FileOutputStream output = new FileOutputStream(file)) {
+                    if (offset != null) {
+                        FileChannel channel = output.getChannel();
+                        long position = 0L;
+                        while (position < entry.getSize()) {
+                            long copied = archive.transferTo(offset.longValue() + position, entry.getSize() - position, channel);
+                            if (copied <= 0L) {
+                                throw new IOException("Unexpected end of " + packedFile + " in " + entry.getName());
+                            }
+                            position += copied;
+                        }
+                    } else {
+                        try (InputStream input = zipFile.getInputStream(entry)) {
+                            int read;
+                            while ((read = input.read(buffer)) >= 0) {
+                                output.write(buffer, 0, read);
+                            }
+                        }
+                    }
+                }
+                if (entry.getTime() != -1L) {
+                    file.setLastModified(entry.getTime());
+                }
+
+                reportProgress(entriesDone.incrementAndGet(), entry.getSize(), totalBytes);
+            }
+        }
+    }
+
+    private void extractToStore(ZipFile zipFile, ZipEntry entry, File file, byte[] buffer) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        File temp = store.createTempFile();
+        try {
+            try (InputStream input = zipFile.getInputStream(entry);
+                 FileOutputStream output = new FileOutputStream(temp)) {
+                int read;
+                while ((read = input.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, read);
+                    output.write(buffer, 0, read);
+                }
+            }
+            if (entry.getTime() != -1L) {
+                temp.setLastModified(entry.getTime());
+            }
+
+            String hash = String.format("%1$032x", new Object[] { new BigInteger(1, digest.digest()) });
+            store.add(temp, hash);
+            store.linkTo(hash, file);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private void reportProgress(int done, long size, long totalBytes) {
+        long before = bytesDone.getAndAdd(Math.max(0L, size));
+        long after = before + Math.max(0L, size);
+        if ((totalBytes > 0L) && (before * 10L / totalBytes != after * 10L / totalBytes) && (after < totalBytes)) {
+            bootstrap.println(new StringBuilder().append("Extracting ").append(packedFile.getName()).append(": ").append(after * 100L / totalBytes).append("% (").append(done).append(" files)").toString());
+        }
+    }
+
+    /**
+     * Reads the central directory to find where the data of each stored entry starts, so it can
+     * be copied without going through ZipFile. Anything unusual (zip64, odd names) is left out
+     * and falls back to the regular stream.
+     */
+    private Map<String, Long> findStoredOffsets() {
+        Map<String, Long> offsets = new HashMap<>();
+        try (RandomAccessFile file = new RandomAccessFile(packedFile, "r")) {
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+            int tail = (int) Math.min(length, 65557L);
+            ByteBuffer end = read(channel, length - tail, tail);
+            int endPosition = -1;
+            for (int i = tail - 22; i >= 0; i--) {
+                if (end.getInt(i) == END_HEADER) {
+                    endPosition = i;
+                    break;
+                }
+            }
+            if (endPosition < 0) {
+                return offsets;
+            }
+
+            long directorySize = end.getInt(endPosition + 12) & 0xFFFFFFFFL;
+            long directoryOffset = end.getInt(endPosition + 16) & 0xFFFFFFFFL;
+            if ((directoryOffset == 0xFFFFFFFFL) || (directoryOffset + directorySize > length)) {
+                return offsets;
+            }
+
+            ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+            int position = 0;
+            while ((position + 46 <= directorySize) && (directory.getInt(position) == CENTRAL_HEADER)) {
+                int method = directory.getShort(position + 10) & 0xFFFF;
+                long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+                int nameLength = directory.getShort(position + 28) & 0xFFFF;
+                int extraLength = directory.getShort(position + 30) & 0xFFFF;
+                int commentLength = directory.getShort(position + 32) & 0xFFFF;
+                long localOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+                if ((method == ZipEntry.STORED) && (compressedSize != 0xFFFFFFFFL) && (localOffset != 0xFFFFFFFFL)) {
+                    byte[] name = new byte[nameLength];
+                    directory.position(position + 46);
+                    directory.get(name);
+                    ByteBuffer local = read(channel, localOffset, 30);
+                    if (local.getInt(0) == LOCAL_HEADER) {
+                        long dataOffset = localOffset + 30L + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+                        offsets.put(new String(name, UTF_8), Long.valueOf(dataOffset));
+                    }
+                }
+                position += 46 + nameLength + extraLength + commentLength;
+            }
+        } catch (IOException | RuntimeException e) {
+            offsets.clear();
+        }
+        return offsets;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
\ No newline at end of file